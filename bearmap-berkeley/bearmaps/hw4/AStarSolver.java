@@ -12,6 +12,7 @@ import java.util.*;
 public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
     private AStarGraph<Vertex> graph;
     private List<Vertex> solution;
+    private List<WeightedEdge<Vertex>> solutionEdges = new ArrayList<>();
     // edge to vertex map
     private Map<Vertex, WeightedEdge<Vertex>> pathMap = new HashMap<>();
     // distance to source map
@@ -20,9 +21,19 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
     private Vertex target;
     private SolverOutcome outcome;
     private int numStates = 0;
+    private int maxPqSize = 0;
+    private int edgesRelaxed = 0;
     private double explorationTime;
 
     public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout) {
+        this(input, start, end, new SolverBudget(timeout));
+    }
+
+    /**
+     * Searches for the shortest path from START to END, stopping early with a TIMEOUT
+     * outcome once BUDGET runs out or is cancelled.
+     */
+    public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, SolverBudget budget) {
         graph = input;
         this.target = end;
         ExtrinsicMinPQ<Vertex> pq = new DoubleMapPQ<>();
@@ -35,7 +46,7 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
         boolean pqIsEmpty = pq.size() == 0;
 
         while (!pqIsEmpty && !smallestIsGoal(pq, end)
-                && notTimeout(timer, timeout)) {
+                && budget.allows(numStates)) {
             Vertex current = pq.removeSmallest();
             numStates += 1;
             for (WeightedEdge<Vertex> edge : graph.neighbors(current)) {
@@ -43,6 +54,7 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
                 double oldDist = getDistToSource(next);
                 double newDist = getDistToSource(current) + edge.weight();
                 if (newDist < oldDist) {
+                    edgesRelaxed += 1;
                     pathMap.put(next, edge);
                     distToSource.put(next, getDistToSource(current) + edge.weight());
                     double priority = graph.estimatedDistanceToGoal(next, end) + getDistToSource(next);
@@ -53,6 +65,7 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
                     }
                 }
             }
+            maxPqSize = Math.max(maxPqSize, pq.size());
             pqIsEmpty = pq.size() == 0;
         }
         explorationTime = timer.elapsedTime();
@@ -76,11 +89,6 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
         return pq.getSmallest().equals(goal);
     }
 
-
-    private boolean notTimeout(Stopwatch timer, double timeout) {
-        return timer.elapsedTime() < timeout;
-    }
-
     @Override
     public SolverOutcome outcome() {
         return outcome;
@@ -91,10 +99,12 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
         path.add(end);
         while (pathMap.get(end) != null) {
             WeightedEdge<Vertex> e = pathMap.get(end);
+            solutionEdges.add(e);
             path.add(e.from());
             end = e.from();
         }
         Collections.reverse(path);
+        Collections.reverse(solutionEdges);
         return path;
     }
 
@@ -113,6 +123,13 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
         return solution;
     }
 
+    /**
+     * Returns the edges traversed by solution(), in order; one fewer than its vertices.
+     */
+    public List<WeightedEdge<Vertex>> solutionEdges() {
+        return solutionEdges;
+    }
+
     @Override
     public int numStatesExplored() {
         return numStates;
@@ -123,15 +140,25 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
         return explorationTime;
     }
 
+    /** Returns the largest number of vertices the priority queue held during the search. */
+    public int maxPqSize() {
+        return maxPqSize;
+    }
+
+    /** Returns the number of times a shorter path to a vertex was found. */
+    public int edgesRelaxed() {
+        return edgesRelaxed;
+    }
+
     public class Stopwatch {
-        private final long start = System.currentTimeMillis();
+        private final long start = System.nanoTime();
 
         public Stopwatch() {
         }
 
         public double elapsedTime() {
-            long now = System.currentTimeMillis();
-            return (double)(now - this.start) / 1000.0D;
+            long now = System.nanoTime();
+            return (double)(now - this.start) / 1e9;
         }
     }
 }
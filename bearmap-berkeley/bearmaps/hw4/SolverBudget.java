@@ -0,0 +1,68 @@
+package bearmaps.hw4;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the work a shortest paths search may do: a time limit measured with
+ * System.nanoTime, a maximum number of vertices to expand, and a flag another thread
+ * can set to cancel the search. The clock and the flag are only read every
+ * checkInterval expansions, so keeping to the budget costs almost nothing per vertex.
+ * The time limit runs from the creation of the budget.
+ */
+public class SolverBudget {
+    /** Expansions between two reads of the clock and the cancellation flag. */
+    public static final int DEFAULT_CHECK_INTERVAL = 128;
+
+    private final long startNanos = System.nanoTime();
+    private final long timeoutNanos;
+    private final long maxExpansions;
+    private final int checkInterval;
+    private volatile boolean cancelled;
+
+    /** A budget of TIMEOUT seconds, with no limit on the number of expansions. */
+    public SolverBudget(double timeout) {
+        this(timeout, Long.MAX_VALUE, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * A budget of TIMEOUT seconds and at most MAXEXPANSIONS expanded vertices, where the
+     * clock and the cancellation flag are read every CHECKINTERVAL expansions.
+     */
+    public SolverBudget(double timeout, long maxExpansions, int checkInterval) {
+        if (checkInterval < 1) {
+            throw new IllegalArgumentException("Check interval must be positive.");
+        }
+        // a double too large for a long saturates to Long.MAX_VALUE, i.e. no time limit
+        this.timeoutNanos = (long) (timeout * TimeUnit.SECONDS.toNanos(1));
+        this.maxExpansions = maxExpansions;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Returns true if a search that has expanded EXPANSIONS vertices may expand another.
+     * Only every checkInterval-th call looks at the clock and the cancellation flag.
+     */
+    public boolean allows(long expansions) {
+        if (expansions >= maxExpansions) {
+            return false;
+        }
+        if (expansions % checkInterval != 0) {
+            return true;
+        }
+        return !cancelled && elapsedNanos() < timeoutNanos;
+    }
+
+    /** Stops every search using this budget at its next check. Safe to call from any thread. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Returns the nanoseconds since this budget was created. */
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+}
@@ -44,6 +44,8 @@ public class GraphBuildingHandler extends DefaultHandler {
     private final StreetMapGraph g;
 
     private String wayName = "";
+    // one instance of each way name, shared by the edges of every way with that name
+    private final Map<String, String> wayNames = new HashMap<>();
 
     public GraphBuildingHandler(StreetMapGraph g) {
         this.g = g;
@@ -119,11 +121,12 @@ public class GraphBuildingHandler extends DefaultHandler {
         if (qName.equals("way")) {
             /* We are done looking at a way. (We finished looking at the nodes, speeds, etc...)*/
             if (validWay) {
+                String name = wayNames.computeIfAbsent(wayName, k -> k);
                 for (int i = 0; i < nodePath.size() - 1; i++) {
                     long fromID = nodePath.get(i);
                     long toID = nodePath.get(i + 1);
-                    g.addWeightedEdge(fromID, toID, wayName);
-                    g.addWeightedEdge(toID, fromID, wayName);
+                    g.addWeightedEdge(fromID, toID, name);
+                    g.addWeightedEdge(toID, fromID, name);
                 }
             }
             clearStates();
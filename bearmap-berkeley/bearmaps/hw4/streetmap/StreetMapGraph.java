@@ -11,19 +11,42 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class StreetMapGraph implements AStarGraph<Long> {
     private Map<Long, Node> nodes = new HashMap<>();
     private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+    // how long reading and cleaning the graph took, for startup timings
+    private long loadNanos;
 
     private StreetMapGraph() {
     }
 
     public StreetMapGraph(String filename) {
+        long start = System.nanoTime();
         StreetMapGraph smg = StreetMapGraph.readFromXML(filename);
         this.nodes = smg.nodes;
         this.neighbors = smg.neighbors;
+        this.loadNanos = System.nanoTime() - start;
+    }
+
+    /** Shares the nodes and edges of OTHER, for subclasses that make views of a graph. */
+    protected StreetMapGraph(StreetMapGraph other) {
+        this.nodes = other.nodes;
+        this.neighbors = other.neighbors;
+        this.loadNanos = other.loadNanos;
+    }
+
+    /**
+     * Drops the edges of this graph, for subclasses that keep them in a more compact form
+     * and override neighbors and getWeightedEdge to read that instead. Nodes are kept.
+     */
+    protected void releaseEdges() {
+        neighbors = null;
+    }
+
+    /** Returns the time in nanoseconds taken to parse the file and clean the graph. */
+    protected long loadNanos() {
+        return loadNanos;
     }
 
     /**
@@ -112,13 +135,21 @@ public class StreetMapGraph implements AStarGraph<Long> {
         }
     }
 
+    /**
+     * Returns the edge from FROMID to TOID, or null if there is none or more than one.
+     * Scans the edges out of FROMID in place rather than copying them.
+     */
     public WeightedEdge<Long> getWeightedEdge(long fromID, long toID) {
-        List<WeightedEdge<Long>> oneEdgeList = this.neighbors(fromID).stream().filter(e -> e.to().equals(toID)).collect(Collectors.toList());
-        if (oneEdgeList.size() == 1) {
-            return oneEdgeList.get(0);
-        } else {
-            return null;
+        WeightedEdge<Long> found = null;
+        for (WeightedEdge<Long> e : neighbors.getOrDefault(fromID, Collections.emptySet())) {
+            if (e.to() == toID) {
+                if (found != null) {
+                    return null;
+                }
+                found = e;
+            }
         }
+        return found;
     }
 
     /**
@@ -191,7 +222,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      *
      * @source Kevin Lowe & Antares Chen, and https://www.movable-type.co.uk/scripts/latlong.html
      **/
-    private double distance(double lonV, double lonW, double latV, double latW) {
+    public static double distance(double lonV, double lonW, double latV, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
         double dphi = Math.toRadians(latW - latV);
@@ -0,0 +1,207 @@
+package bearmaps.proj2ab;
+
+import java.util.List;
+
+/**
+ * A PointSet backed by a uniform grid of buckets over a fixed bounding box.
+ * Points are sorted by cell once at construction and their coordinates are kept
+ * in primitive arrays, so a nearest query only touches a handful of neighbouring
+ * cells, searched in expanding rings around the cell containing the goal.
+ * Points outside the bounding box are clamped into the border cells.
+ */
+public class GridPointSet implements PointSet {
+    /** Average number of points per cell when the resolution is picked automatically. */
+    private static final int POINTS_PER_CELL = 2;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int cols;
+    private final int rows;
+
+    // points of cell c are stored at indices [cellStart[c], cellStart[c + 1])
+    private final int[] cellStart;
+    private final double[] xs;
+    private final double[] ys;
+    private final Point[] points;
+
+    /**
+     * Builds a grid over the bounding box of POINTS, with a resolution chosen so that
+     * each cell holds about POINTS_PER_CELL points.
+     */
+    public GridPointSet(List<Point> points) {
+        this(points, minX(points), minY(points), maxX(points), maxY(points));
+    }
+
+    /**
+     * Builds a grid over the given bounding box, with a resolution chosen so that
+     * each cell holds about POINTS_PER_CELL points.
+     */
+    public GridPointSet(List<Point> points, double minX, double minY, double maxX, double maxY) {
+        this(points, minX, minY, maxX, maxY, side(points.size()), side(points.size()));
+    }
+
+    /**
+     * Builds a COLS x ROWS grid over the given bounding box.
+     */
+    public GridPointSet(List<Point> points, double minX, double minY, double maxX, double maxY,
+                        int cols, int rows) {
+        if (cols < 1 || rows < 1) {
+            throw new IllegalArgumentException("Grid needs at least one column and one row.");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.cols = cols;
+        this.rows = rows;
+        this.cellWidth = (maxX - minX) / cols;
+        this.cellHeight = (maxY - minY) / rows;
+
+        int n = points.size();
+        int[] cellOf = new int[n];
+        cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < n; i++) {
+            Point p = points.get(i);
+            cellOf[i] = cellIndex(colOf(p.getX()), rowOf(p.getY()));
+            cellStart[cellOf[i] + 1] += 1;
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        xs = new double[n];
+        ys = new double[n];
+        this.points = new Point[n];
+        int[] next = new int[cols * rows];
+        System.arraycopy(cellStart, 0, next, 0, cols * rows);
+        for (int i = 0; i < n; i++) {
+            Point p = points.get(i);
+            int slot = next[cellOf[i]]++;
+            xs[slot] = p.getX();
+            ys[slot] = p.getY();
+            this.points[slot] = p;
+        }
+    }
+
+    @Override
+    public Point nearest(double x, double y) {
+        if (points.length == 0) {
+            return null;
+        }
+        int cx = colOf(x);
+        int cy = rowOf(y);
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+
+        for (int r = 0; ; r++) {
+            int colLo = cx - r, colHi = cx + r, rowLo = cy - r, rowHi = cy + r;
+            for (int row = Math.max(rowLo, 0); row <= Math.min(rowHi, rows - 1); row++) {
+                boolean edgeRow = row == rowLo || row == rowHi;
+                // interior rows of the ring only contribute their two end cells
+                int step = edgeRow ? 1 : colHi - colLo;
+                for (int col = colLo; col <= colHi; col += step) {
+                    if (col < 0 || col >= cols) {
+                        continue;
+                    }
+                    int cell = cellIndex(col, row);
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        double d = Point.distance(xs[i], x, ys[i], y);
+                        if (d < bestDist) {
+                            bestDist = d;
+                            best = i;
+                        }
+                    }
+                }
+            }
+
+            boolean coversGrid = colLo <= 0 && colHi >= cols - 1 && rowLo <= 0 && rowHi >= rows - 1;
+            if (coversGrid || (best >= 0 && lowerBound(x, y, colLo, colHi, rowLo, rowHi) >= bestDist)) {
+                return points[best];
+            }
+        }
+    }
+
+    /**
+     * Returns a lower bound on the distance from (X, Y) to any point in a cell outside the
+     * block of cells [COLLO, COLHI] x [ROWLO, ROWHI]. Sides of the block that already lie on
+     * the border of the grid have nothing beyond them and are ignored.
+     */
+    private double lowerBound(double x, double y, int colLo, int colHi, int rowLo, int rowHi) {
+        double bound = Double.POSITIVE_INFINITY;
+        if (colLo > 0) {
+            bound = Math.min(bound, Point.distance(x, minX + colLo * cellWidth, y, y));
+        }
+        if (colHi < cols - 1) {
+            bound = Math.min(bound, Point.distance(x, minX + (colHi + 1) * cellWidth, y, y));
+        }
+        if (rowLo > 0) {
+            bound = Math.min(bound, Point.distance(x, x, y, minY + rowLo * cellHeight));
+        }
+        if (rowHi < rows - 1) {
+            bound = Math.min(bound, Point.distance(x, x, y, minY + (rowHi + 1) * cellHeight));
+        }
+        return bound;
+    }
+
+    private int colOf(double x) {
+        if (x <= minX) {
+            return 0;
+        } else if (x >= maxX) {
+            return cols - 1;
+        }
+        return Math.min(cols - 1, (int) ((x - minX) / cellWidth));
+    }
+
+    private int rowOf(double y) {
+        if (y <= minY) {
+            return 0;
+        } else if (y >= maxY) {
+            return rows - 1;
+        }
+        return Math.min(rows - 1, (int) ((y - minY) / cellHeight));
+    }
+
+    private int cellIndex(int col, int row) {
+        return row * cols + col;
+    }
+
+    private static int side(int n) {
+        return Math.max(1, (int) Math.sqrt((double) n / POINTS_PER_CELL));
+    }
+
+    private static double minX(List<Point> points) {
+        double m = Double.POSITIVE_INFINITY;
+        for (Point p : points) {
+            m = Math.min(m, p.getX());
+        }
+        return points.isEmpty() ? 0 : m;
+    }
+
+    private static double minY(List<Point> points) {
+        double m = Double.POSITIVE_INFINITY;
+        for (Point p : points) {
+            m = Math.min(m, p.getY());
+        }
+        return points.isEmpty() ? 0 : m;
+    }
+
+    private static double maxX(List<Point> points) {
+        double m = Double.NEGATIVE_INFINITY;
+        for (Point p : points) {
+            m = Math.max(m, p.getX());
+        }
+        return points.isEmpty() ? 0 : m;
+    }
+
+    private static double maxY(List<Point> points) {
+        double m = Double.NEGATIVE_INFINITY;
+        for (Point p : points) {
+            m = Math.max(m, p.getY());
+        }
+        return points.isEmpty() ? 0 : m;
+    }
+}
@@ -1,11 +1,22 @@
 package bearmaps.proj2c;
 
+import bearmaps.hw4.WeightedEdge;
 import bearmaps.hw4.streetmap.Node;
 import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2ab.GridPointSet;
 import bearmaps.proj2ab.KDTree;
 import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.PointSet;
+import bearmaps.proj2c.utils.NameNormalizer;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static bearmaps.proj2c.utils.Constants.*;
 
 /**
  * An augmented graph that is more powerful that a standard StreetMapGraph.
@@ -15,35 +26,193 @@ import java.util.*;
  */
 public class AugmentedStreetMapGraph extends StreetMapGraph {
 
-    private KDTree kdTree;
+    /**
+     * The spatial index used to answer closest-vertex queries.
+     * KD_TREE is the original KDTree; GRID is a GridPointSet over the root tile bounds.
+     */
+    public enum PointSetType {
+        KD_TREE, GRID
+    }
+
+    /** Builds the indexes of a graph once it is parsed. Workers are daemon threads. */
+    private static final ForkJoinPool BUILD_POOL =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final PointSet pointSet;
+    private final PointSetType pointSetType;
     // key is a clean name, value is a list of all the nodes with the same clean name
-    private Map<String, List<Node>> cleanNameMap;
+    private final Map<String, List<Node>> cleanNameMap;
+    // key is a clean name, value is the sorted distinct original names with that clean name
+    private final Map<String, List<String>> cleanNameToNames;
     // a trie of clean names of all the nodes
-    private MyTrieSet cleanNameTrie;
+    private final CompactTrieSet cleanNameTrie;
+    // a dense copy of the graph for searches that visit much of it
+    private final GraphIndex index;
+    // the index with its degree-2 chains contracted, for single route searches
+    private final ContractedGraph contracted;
+    // the time taken by each stage of the build, by stage name
+    private final Map<String, Long> buildNanos = new ConcurrentHashMap<>();
 
     public AugmentedStreetMapGraph(String dbPath) {
+        this(dbPath, PointSetType.KD_TREE);
+    }
+
+    public AugmentedStreetMapGraph(String dbPath, PointSetType pointSetType) {
         super(dbPath);
+        long start = System.nanoTime();
+        this.pointSetType = pointSetType;
+        buildNanos.put("parse", loadNanos());
         // You might find it helpful to uncomment the line below:
         List<Node> nodes = this.getNodes();
+
+        // the indexes only read the parsed graph, so they are built at the same time; the
+        // trie, which ranks clean names by how many nodes carry them, and the name lists
+        // both wait for the name map
+        CompletableFuture<PointSet> pointSetTask = CompletableFuture.supplyAsync(
+                () -> timed("point_set", () -> buildPointSet(nodes, pointSetType)), BUILD_POOL);
+        CompletableFuture<GraphIndex> indexTask = CompletableFuture.supplyAsync(
+                () -> timed("index", () -> new GraphIndex(this, nodes,
+                        GraphIndex.VertexOrder.HILBERT)), BUILD_POOL);
+        CompletableFuture<ContractedGraph> contractedTask = indexTask.thenApplyAsync(
+                graphIndex -> timed("contraction", () -> new ContractedGraph(graphIndex)),
+                BUILD_POOL);
+        CompletableFuture<Map<String, List<Node>>> nameMapTask = CompletableFuture.supplyAsync(
+                () -> timed("names", () -> buildCleanNameMap(nodes)), BUILD_POOL);
+        CompletableFuture<CompactTrieSet> trieTask = nameMapTask.thenApplyAsync(
+                nameMap -> timed("trie", () -> new CompactTrieSet(nameMap.keySet(),
+                        name -> nameMap.get(name).size())), BUILD_POOL);
+        CompletableFuture<Map<String, List<String>>> namesTask = nameMapTask.thenApplyAsync(
+                nameMap -> timed("name_lists", () -> buildCleanNameToNames(nameMap)), BUILD_POOL);
+
+        pointSet = join(pointSetTask);
+        index = join(indexTask);
+        contracted = join(contractedTask);
+        cleanNameMap = join(nameMapTask);
+        cleanNameTrie = join(trieTask);
+        cleanNameToNames = join(namesTask);
+        // every edge is in the index now; the parsed copies are about two thirds of the heap
+        releaseEdges();
+        buildNanos.put("indexes", System.nanoTime() - start);
+    }
+
+    /**
+     * Shares everything of BASE except its index and contracted graph, which are replaced
+     * by INDEX and CONTRACTED.
+     */
+    private AugmentedStreetMapGraph(AugmentedStreetMapGraph base, GraphIndex index,
+                                    ContractedGraph contracted) {
+        super(base);
+        pointSet = base.pointSet;
+        pointSetType = base.pointSetType;
+        cleanNameMap = base.cleanNameMap;
+        cleanNameToNames = base.cleanNameToNames;
+        cleanNameTrie = base.cleanNameTrie;
+        this.index = index;
+        this.contracted = contracted;
+        buildNanos.putAll(base.buildNanos);
+    }
+
+    /**
+     * Returns this graph with the edge updates of BATCH applied on top of those it already
+     * has. Nothing is rebuilt: the returned graph shares every index of this one, and only
+     * reads the weights of the changed edges through its overlay. This graph is unchanged.
+     *
+     * @throws IllegalArgumentException if some update has no edge, or a weight below the
+     *                                  length of its edge, in which case none of BATCH is
+     *                                  applied.
+     */
+    public AugmentedStreetMapGraph withUpdates(List<EdgeUpdate> batch) {
+        GraphIndex view = index.withUpdates(batch);
+        return new AugmentedStreetMapGraph(this, view, contracted.withIndex(view));
+    }
+
+    /**
+     * Returns this graph with the updates of its overlay folded into its index, and its
+     * contracted graph built again, so that searches no longer look edges up in the
+     * overlay. Recorded as the "compaction" stage of buildTimings.
+     */
+    public AugmentedStreetMapGraph compacted() {
+        if (index.overlay().isEmpty()) {
+            return this;
+        }
+        long start = System.nanoTime();
+        GraphIndex compact = index.compact();
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(this, compact,
+                new ContractedGraph(compact));
+        graph.buildNanos.put("compaction", System.nanoTime() - start);
+        return graph;
+    }
+
+    private PointSet buildPointSet(List<Node> nodes, PointSetType pointSetType) {
         List<Point> nodesWithNbs = new ArrayList<>();
-        cleanNameMap = new HashMap<>();
-        cleanNameTrie = new MyTrieSet();
+        for (Node node : nodes) {
+            if (!super.neighbors(node.id()).isEmpty()) {
+                nodesWithNbs.add(node);
+            }
+        }
+        if (pointSetType == PointSetType.GRID) {
+            return new GridPointSet(nodesWithNbs, ROOT_ULLON, ROOT_LRLAT, ROOT_LRLON, ROOT_ULLAT);
+        }
+        return new KDTree(nodesWithNbs);
+    }
 
+    private static Map<String, List<Node>> buildCleanNameMap(List<Node> nodes) {
+        Map<String, List<Node>> nameMap = new HashMap<>();
+        // many nodes share a name, so clean each distinct name only once
+        Map<String, String> cleanNameOf = new HashMap<>();
         for (Node node : nodes) {
             if (node.name() != null) {
-                String cleanName = cleanString(node.name());
-                cleanNameMap.putIfAbsent(cleanName, new ArrayList<>());
-                cleanNameMap.get(cleanName).add(node);
-                cleanNameTrie.add(cleanName);
+                String cleanName = cleanNameOf.computeIfAbsent(node.name(),
+                        AugmentedStreetMapGraph::cleanString);
+                nameMap.computeIfAbsent(cleanName, k -> new ArrayList<>()).add(node);
             }
+        }
+        return nameMap;
+    }
 
-            if (!this.neighbors(node.id()).isEmpty()) {
-                nodesWithNbs.add(node);
+    private static Map<String, List<String>> buildCleanNameToNames(Map<String, List<Node>> nameMap) {
+        Map<String, List<String>> namesOf = new HashMap<>();
+        for (Map.Entry<String, List<Node>> entry : nameMap.entrySet()) {
+            Set<String> names = new TreeSet<>();
+            for (Node n : entry.getValue()) {
+                names.add(n.name());
             }
+            namesOf.put(entry.getKey(), new ArrayList<>(names));
         }
-        kdTree = new KDTree(nodesWithNbs);
+        return namesOf;
+    }
 
+    /** Runs STAGE, recording how long it took under NAME. */
+    private <T> T timed(String name, Supplier<T> stage) {
+        long start = System.nanoTime();
+        T result = stage.get();
+        buildNanos.put(name, System.nanoTime() - start);
+        return result;
+    }
 
+    /** Waits for TASK, rethrowing whatever made it fail rather than a wrapper. */
+    private static <T> T join(CompletableFuture<T> task) {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns how long each stage of building this graph took, in nanoseconds: "parse"
+     * for reading and cleaning the file, then "point_set", "index", "contraction", "names",
+     * "trie" and "name_lists" for the indexes, which are built concurrently, and "indexes"
+     * for the wall-clock time of all of them together.
+     */
+    public Map<String, Long> buildTimings() {
+        return Collections.unmodifiableMap(buildNanos);
     }
 
 
@@ -56,10 +225,100 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * @return The id of the node in the graph closest to the target.
      */
     public long closest(double lon, double lat) {
-        Node nearest = (Node) kdTree.nearest(lon, lat);
+        Node nearest = (Node) pointSet.nearest(lon, lat);
         return nearest.id();
     }
 
+    /**
+     * Returns the vertices closest to each of the given locations, as closest would one at
+     * a time. The locations are sorted first, so that a location that repeats, such as the
+     * end of one leg of a trip and the start of the next, is looked up only once.
+     *
+     * @param lons The target longitudes.
+     * @param lats The target latitudes, one for each longitude.
+     * @return The ids of the nodes closest to each target, in the same order.
+     */
+    public long[] closest(double[] lons, double[] lats) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException("Need one latitude for each longitude.");
+        }
+        Integer[] order = new Integer[lons.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingDouble(i -> lons[i])
+                .thenComparingDouble(i -> lats[i]));
+
+        long[] ids = new long[lons.length];
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            if (k > 0 && lons[i] == lons[order[k - 1]] && lats[i] == lats[order[k - 1]]) {
+                ids[i] = ids[order[k - 1]];
+            } else {
+                ids[i] = closest(lons[i], lats[i]);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the outgoing edges of V with the weights of the updates applied to this
+     * graph, leaving out closed edges. Once the index is built the edges are read from it,
+     * as new edges each call, so they are equal to earlier ones by value only.
+     */
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        if (index == null) {
+            // still building the indexes from the parsed edges
+            return super.neighbors(v);
+        }
+        int i = index.indexOf(v);
+        return i < 0 ? new ArrayList<>() : index.openEdges(i);
+    }
+
+    /**
+     * Returns the edge from FROMID to TOID, or null if there is none or more than one.
+     * Only the edges out of FROMID are scanned, and nothing is copied.
+     */
+    @Override
+    public WeightedEdge<Long> getWeightedEdge(long fromID, long toID) {
+        int e = index.edge(index.indexOf(fromID), index.indexOf(toID));
+        return e < 0 ? null : index.weightedEdge(e);
+    }
+
+    /**
+     * Returns the longitude of vertex V, or 0 if it is not in the graph. Read from the
+     * dense index rather than the map of nodes, since routes are drawn and described one
+     * vertex at a time.
+     */
+    @Override
+    public double lon(long v) {
+        int i = index.indexOf(v);
+        return i < 0 ? 0.0 : index.lon(i);
+    }
+
+    /** Returns the latitude of vertex V, or 0 if it is not in the graph. */
+    @Override
+    public double lat(long v) {
+        int i = index.indexOf(v);
+        return i < 0 ? 0.0 : index.lat(i);
+    }
+
+    /** Returns the kind of spatial index that answers closest-vertex queries. */
+    public PointSetType pointSetType() {
+        return pointSetType;
+    }
+
+    /** Returns the dense index of this graph with its degree-2 chains contracted. */
+    public ContractedGraph contracted() {
+        return contracted;
+    }
+
+    /** Returns a dense, array based copy of this graph, for searches that visit much of it. */
+    public GraphIndex index() {
+        return index;
+    }
+
 
     /**
      * For Project Part III (gold points)
@@ -73,19 +332,101 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
     public List<String> getLocationsByPrefix(String prefix) {
         List<String> cleanNames = cleanNameTrie.keysWithPrefix(cleanString(prefix));
 
-        // Use a set to store the original names and remove duplicate names
-        Set<String> names = new HashSet<>();
+        // an original name always cleans to the same clean name, so the lists are disjoint
+        List<String> namesList = new ArrayList<>();
         for (String cleanName : cleanNames) {
-            List<Node> nodes = cleanNameMap.get(cleanName);
-            for (Node n : nodes) {
-                names.add(n.name());
+            namesList.addAll(cleanNameToNames.get(cleanName));
+        }
+        Collections.sort(namesList);
+        return namesList;
+    }
+
+    /**
+     * Collect at most <code>limit</code> names of OSM locations that prefix-match the query
+     * string, ranked by the number of nodes sharing each cleaned name. Only the best ranked
+     * part of the name trie is visited, so the cost depends on <code>limit</code> rather than
+     * on the number of matches.
+     *
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit  The maximum number of names to return.
+     * @return A <code>List</code> of the full names of the best ranked locations whose cleaned
+     * name matches the cleaned <code>prefix</code>, best first.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+        List<String> cleanNames = cleanNameTrie.topKeysWithPrefix(cleanString(prefix), limit);
+
+        List<String> namesList = new ArrayList<>();
+        for (String cleanName : cleanNames) {
+            for (String name : cleanNameToNames.get(cleanName)) {
+                if (namesList.size() == limit) {
+                    return namesList;
+                }
+                namesList.add(name);
             }
         }
-        List<String> namesList = new ArrayList<>(names);
+        return namesList;
+    }
+
+    /**
+     * Collect all the names of OSM locations whose cleaned name starts with a string within
+     * <code>maxEdits</code> typos (insertions, deletions or substitutions) of the cleaned
+     * query string. Fewer typos than letters are tolerated, since with as many typos every
+     * name would match.
+     *
+     * @param prefix   Prefix string to be searched for. Could be any case, with our without
+     *                 punctuation.
+     * @param maxEdits The maximum number of typos tolerated.
+     * @return A sorted <code>List</code> of the full names of matching locations.
+     */
+    public List<String> getLocationsByFuzzyPrefix(String prefix, int maxEdits) {
+        String cleanPrefix = cleanString(prefix);
+        List<String> cleanNames = cleanNameTrie.keysWithFuzzyPrefix(cleanPrefix,
+                fuzzyEdits(cleanPrefix, maxEdits));
+
+        List<String> namesList = new ArrayList<>();
+        for (String cleanName : cleanNames) {
+            namesList.addAll(cleanNameToNames.get(cleanName));
+        }
         Collections.sort(namesList);
         return namesList;
     }
 
+    /**
+     * Collect at most <code>limit</code> names of OSM locations whose cleaned name starts
+     * with a string within <code>maxEdits</code> typos of the cleaned query string, as
+     * above. Names with fewer typos come first, and among those the names ranked first by
+     * the number of nodes sharing each cleaned name.
+     *
+     * @param prefix   Prefix string to be searched for. Could be any case, with our without
+     *                 punctuation.
+     * @param maxEdits The maximum number of typos tolerated.
+     * @param limit    The maximum number of names to return.
+     * @return A <code>List</code> of the full names of the best matching locations, best
+     * first.
+     */
+    public List<String> getLocationsByFuzzyPrefix(String prefix, int maxEdits, int limit) {
+        String cleanPrefix = cleanString(prefix);
+        List<String> cleanNames = cleanNameTrie.topKeysWithFuzzyPrefix(cleanPrefix,
+                fuzzyEdits(cleanPrefix, maxEdits), limit);
+
+        List<String> namesList = new ArrayList<>();
+        for (String cleanName : cleanNames) {
+            for (String name : cleanNameToNames.get(cleanName)) {
+                if (namesList.size() == limit) {
+                    return namesList;
+                }
+                namesList.add(name);
+            }
+        }
+        return namesList;
+    }
+
+    /** Returns MAXEDITS, lowered to fewer typos than CLEANPREFIX has letters. */
+    private static int fuzzyEdits(String cleanPrefix, int maxEdits) {
+        return Math.min(maxEdits, cleanPrefix.length() - 1);
+    }
+
     /**
      * For Project Part III (gold points)
      * Collect all locations that match a cleaned <code>locationName</code>, and return
@@ -116,14 +457,15 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
 
 
     /**
-     * Useful for Part III. Do not modify.
+     * Useful for Part III.
      * Helper to process strings into their "cleaned" form, ignoring punctuation and capitalization.
      *
      * @param s Input string.
      * @return Cleaned string.
+     * @see NameNormalizer#clean(String)
      */
     private static String cleanString(String s) {
-        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+        return NameNormalizer.clean(s);
     }
 
 }
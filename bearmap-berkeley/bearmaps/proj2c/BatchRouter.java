@@ -0,0 +1,126 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.SolverBudget;
+import bearmaps.hw4.SolverOutcome;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Finds many routes, or distances, at once. All endpoints are snapped to the graph in
+ * one batch, then the searches run in parallel on a fork-join pool. Each search borrows
+ * an IndexedSearch over the graph's GraphIndex from the shared pool and returns it when
+ * done, so a batch allocates no per-search maps or queues.
+ */
+public class BatchRouter {
+    /** Runs batch searches, one worker per processor. Workers are daemon threads. */
+    private static final ForkJoinPool POOL =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private BatchRouter() {
+    }
+
+    /**
+     * Finds the shortest path for each pair of start and destination locations, the
+     * i-th pair being (STLONS[i], STLATS[i]) to (DESTLONS[i], DESTLATS[i]). Every search
+     * stops once BUDGET runs out or is cancelled; the time limit covers the whole batch,
+     * the expansion limit each search.
+     *
+     * @return The result of each pair, in the same order.
+     */
+    public static List<Router.RouteResult> routes(AugmentedStreetMapGraph g,
+                                                  double[] stlons, double[] stlats,
+                                                  double[] destlons, double[] destlats,
+                                                  SolverBudget budget) {
+        GraphIndex index = g.index();
+        long[][] snapped = closest(g, stlons, stlats, destlons, destlats);
+        long[] sources = snapped[0];
+        long[] targets = snapped[1];
+
+        List<ForkJoinTask<Router.RouteResult>> tasks = new ArrayList<>(sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            int source = index.indexOf(sources[i]);
+            int target = index.indexOf(targets[i]);
+            tasks.add(POOL.submit(() -> route(index, source, target, budget)));
+        }
+        List<Router.RouteResult> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<Router.RouteResult> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /**
+     * Computes the travel distance from every source location to every target location,
+     * the i-th source being (SRCLONS[i], SRCLATS[i]) and the j-th target (DESTLONS[j],
+     * DESTLATS[j]). One Dijkstra search per source runs until all targets are settled,
+     * instead of one search per pair, and the sources are searched in parallel. Every
+     * search stops once BUDGET runs out or is cancelled; targets it did not settle are
+     * left at infinity and the matrix is marked incomplete.
+     */
+    public static DistanceMatrix distanceMatrix(AugmentedStreetMapGraph g,
+                                                double[] srcLons, double[] srcLats,
+                                                double[] destLons, double[] destLats,
+                                                SolverBudget budget) {
+        GraphIndex index = g.index();
+        long[][] snapped = closest(g, srcLons, srcLats, destLons, destLats);
+        long[] sources = snapped[0];
+        long[] targets = snapped[1];
+        int[] targetVertices = new int[targets.length];
+        for (int j = 0; j < targets.length; j++) {
+            targetVertices[j] = index.indexOf(targets[j]);
+        }
+
+        double[][] distances = new double[sources.length][];
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            int row = i;
+            int source = index.indexOf(sources[i]);
+            tasks.add(POOL.submit(() -> {
+                try (IndexedSearch search = IndexedSearch.acquire(index)) {
+                    boolean finished = search.dijkstra(source, targetVertices, budget);
+                    double[] distanceRow = new double[targetVertices.length];
+                    for (int j = 0; j < targetVertices.length; j++) {
+                        int t = targetVertices[j];
+                        distanceRow[j] = search.isSettled(t)
+                                ? search.distTo(t) : Double.POSITIVE_INFINITY;
+                    }
+                    distances[row] = distanceRow;
+                    return finished;
+                }
+            }));
+        }
+        boolean complete = true;
+        for (ForkJoinTask<Boolean> task : tasks) {
+            complete &= task.join();
+        }
+        return new DistanceMatrix(sources, targets, distances, complete);
+    }
+
+    /**
+     * Snaps the locations (LONSA[i], LATSA[i]) and (LONSB[j], LATSB[j]) to the graph in one
+     * batch, so that a location in both, as when sources double as targets, is looked up
+     * once. Returns the node ids of the first locations, then of the second.
+     */
+    private static long[][] closest(AugmentedStreetMapGraph g, double[] lonsA, double[] latsA,
+                                    double[] lonsB, double[] latsB) {
+        double[] lons = Arrays.copyOf(lonsA, lonsA.length + lonsB.length);
+        double[] lats = Arrays.copyOf(latsA, latsA.length + latsB.length);
+        System.arraycopy(lonsB, 0, lons, lonsA.length, lonsB.length);
+        System.arraycopy(latsB, 0, lats, latsA.length, latsB.length);
+        long[] ids = g.closest(lons, lats);
+        return new long[][]{Arrays.copyOf(ids, lonsA.length),
+                Arrays.copyOfRange(ids, lonsA.length, ids.length)};
+    }
+
+    private static Router.RouteResult route(GraphIndex index, int source, int target,
+                                            SolverBudget budget) {
+        try (IndexedSearch search = IndexedSearch.acquire(index)) {
+            SolverOutcome outcome = search.aStar(source, target, budget);
+            return new Router.RouteResult(search, outcome, budget);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+
+/**
+ * A read-only trie built once from a fixed collection of keys.
+ * Nodes are numbered in breadth-first order and stored in parallel primitive arrays,
+ * so the children of a node are a contiguous, label-sorted run that is searched
+ * with binary search. Keys are kept in one sorted array, and every node records the
+ * range of keys in its subtree, so prefix queries never rebuild strings.
+ * Keys may carry an integer score; each node also records the best score in its
+ * subtree, which lets the top scoring completions of a prefix be found best-first
+ * without visiting the rest of the subtree.
+ */
+public class CompactTrieSet {
+    // all keys, sorted; the subtree of node i holds keys[keyLo[i]] .. keys[keyHi[i] - 1]
+    private final String[] keys;
+    // label[i] is the char on the edge into node i; node 0 is the root
+    private final char[] label;
+    // children of node i are the nodes firstChild[i] .. firstChild[i + 1] - 1
+    private final int[] firstChild;
+    private final int[] keyLo;
+    private final int[] keyHi;
+    private final BitSet isKey;
+    // keyScore[k] is the score of keys[k]; maxScore[i] is the best key score in the subtree of node i
+    private final int[] keyScore;
+    private final int[] maxScore;
+    private final int maxKeyLength;
+
+    /** A candidate of a best-first search: either a subtree (node >= 0) or a single key. */
+    private static class Candidate implements Comparable<Candidate> {
+        private final int score;
+        private final int keyIndex;
+        private final int node;
+
+        private Candidate(int score, int keyIndex, int node) {
+            this.score = score;
+            this.keyIndex = keyIndex;
+            this.node = node;
+        }
+
+        /**
+         * Higher scores first, then lower key indices (alphabetical order). A subtree
+         * sorts before the first key it contains, so it is expanded before any key of
+         * equal rank is reported.
+         */
+        @Override
+        public int compareTo(Candidate o) {
+            if (score != o.score) {
+                return Integer.compare(o.score, score);
+            }
+            if (keyIndex != o.keyIndex) {
+                return Integer.compare(keyIndex, o.keyIndex);
+            }
+            return Integer.compare(o.node, node);
+        }
+    }
+
+    /** Builds a trie of KEYCOLLECTION where every key has the same score. */
+    public CompactTrieSet(Collection<String> keyCollection) {
+        this(keyCollection, key -> 0);
+    }
+
+    /** Builds a trie of KEYCOLLECTION where each key is ranked by SCOREOF. */
+    public CompactTrieSet(Collection<String> keyCollection, ToIntFunction<String> scoreOf) {
+        TreeSet<String> sorted = new TreeSet<>();
+        int totalChars = 0;
+        int longest = 0;
+        for (String key : keyCollection) {
+            if (key != null && key.length() > 0 && sorted.add(key)) {
+                totalChars += key.length();
+                longest = Math.max(longest, key.length());
+            }
+        }
+        maxKeyLength = longest;
+        keys = sorted.toArray(new String[0]);
+
+        // every char of every key creates at most one node
+        int capacity = totalChars + 1;
+        char[] labels = new char[capacity];
+        int[] children = new int[capacity + 1];
+        int[] lo = new int[capacity];
+        int[] hi = new int[capacity];
+        int[] depth = new int[capacity];
+        isKey = new BitSet(capacity);
+
+        int count = 1;
+        hi[0] = keys.length;
+        for (int node = 0; node < count; node++) {
+            int d = depth[node];
+            int i = lo[node];
+            int end = hi[node];
+            if (i < end && keys[i].length() == d) {
+                isKey.set(node);
+                i += 1;
+            }
+            children[node] = count;
+            while (i < end) {
+                char c = keys[i].charAt(d);
+                int j = i + 1;
+                while (j < end && keys[j].charAt(d) == c) {
+                    j += 1;
+                }
+                labels[count] = c;
+                lo[count] = i;
+                hi[count] = j;
+                depth[count] = d + 1;
+                count += 1;
+                i = j;
+            }
+        }
+        children[count] = count;
+
+        label = Arrays.copyOf(labels, count);
+        firstChild = Arrays.copyOf(children, count + 1);
+        keyLo = Arrays.copyOf(lo, count);
+        keyHi = Arrays.copyOf(hi, count);
+
+        keyScore = new int[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            keyScore[k] = scoreOf.applyAsInt(keys[k]);
+        }
+        // children always have larger numbers than their parent, so fill bottom-up
+        maxScore = new int[count];
+        for (int node = count - 1; node >= 0; node--) {
+            int best = isKey.get(node) ? keyScore[keyLo[node]] : Integer.MIN_VALUE;
+            for (int c = firstChild[node]; c < firstChild[node + 1]; c++) {
+                best = Math.max(best, maxScore[c]);
+            }
+            maxScore[node] = best;
+        }
+    }
+
+    /** Returns the number of keys in this trie. */
+    public int size() {
+        return keys.length;
+    }
+
+    /** Returns true if the Trie contains KEY, false otherwise */
+    public boolean contains(String key) {
+        if (key == null || key.length() < 1) {
+            return false;
+        }
+        int node = nodeOf(key);
+        return node >= 0 && isKey.get(node);
+    }
+
+    /** Returns a sorted, read-only list of all keys that start with PREFIX */
+    public List<String> keysWithPrefix(String prefix) {
+        if (prefix == null || prefix.length() < 1) {
+            throw new IllegalArgumentException("Call keysWithPrefix() with null argument.");
+        }
+        int node = nodeOf(prefix);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(keys).subList(keyLo[node], keyHi[node]));
+    }
+
+    /**
+     * Returns at most K keys that start with PREFIX, highest score first and
+     * alphabetically among equal scores. Only the part of the subtree needed to
+     * produce those K keys is visited.
+     */
+    public List<String> topKeysWithPrefix(String prefix, int k) {
+        if (prefix == null || prefix.length() < 1) {
+            throw new IllegalArgumentException("Call topKeysWithPrefix() with null argument.");
+        }
+        List<String> result = new ArrayList<>();
+        int start = nodeOf(prefix);
+        if (start < 0 || k < 1) {
+            return result;
+        }
+        PriorityQueue<Candidate> pq = new PriorityQueue<>();
+        pq.add(new Candidate(maxScore[start], keyLo[start], start));
+        while (!pq.isEmpty() && result.size() < k) {
+            Candidate best = pq.poll();
+            if (best.node < 0) {
+                result.add(keys[best.keyIndex]);
+                continue;
+            }
+            if (isKey.get(best.node)) {
+                int keyIndex = keyLo[best.node];
+                pq.add(new Candidate(keyScore[keyIndex], keyIndex, -1));
+            }
+            for (int c = firstChild[best.node]; c < firstChild[best.node + 1]; c++) {
+                pq.add(new Candidate(maxScore[c], keyLo[c], c));
+            }
+        }
+        return result;
+    }
+
+    /** Receives the keys matched by a fuzzy search, a range of key indices at a time. */
+    private interface FuzzyMatches {
+        /** Takes keys[lo] .. keys[hi - 1], which all match within EDITS edits and no fewer. */
+        void add(int lo, int hi, int edits);
+    }
+
+    /**
+     * Returns all keys that start with a string within MAXEDITS insertions, deletions or
+     * substitutions of PREFIX, in sorted order. The trie is walked depth first while
+     * keeping one row of the Levenshtein table per depth, so shared prefixes are only
+     * compared once; a branch is abandoned as soon as every entry of its row exceeds
+     * MAXEDITS, and a whole subtree is taken as soon as no deeper node can match it
+     * with fewer edits.
+     */
+    public List<String> keysWithFuzzyPrefix(String prefix, int maxEdits) {
+        if (prefix == null || prefix.length() < 1) {
+            throw new IllegalArgumentException("Call keysWithFuzzyPrefix() with null argument.");
+        }
+        List<String> result = new ArrayList<>();
+        // matches arrive in key order, since a node's key sorts before those of its children
+        fuzzySearch(prefix, maxEdits, (lo, hi, edits) ->
+                result.addAll(Arrays.asList(keys).subList(lo, hi)));
+        return result;
+    }
+
+    /**
+     * Returns at most K keys that start with a string within MAXEDITS insertions,
+     * deletions or substitutions of PREFIX, fewest edits first, then highest score first
+     * and alphabetically among equal scores. Every match is found before any is dropped,
+     * so a close match is never left out for a more popular distant one.
+     */
+    public List<String> topKeysWithFuzzyPrefix(String prefix, int maxEdits, int k) {
+        if (prefix == null || prefix.length() < 1) {
+            throw new IllegalArgumentException("Call topKeysWithFuzzyPrefix() with null argument.");
+        }
+        List<String> result = new ArrayList<>();
+        if (k < 1 || maxEdits < 0) {
+            return result;
+        }
+        List<List<Candidate>> byEdits = new ArrayList<>();
+        for (int edits = 0; edits <= maxEdits; edits++) {
+            byEdits.add(new ArrayList<>());
+        }
+        fuzzySearch(prefix, maxEdits, (lo, hi, edits) -> {
+            List<Candidate> matches = byEdits.get(edits);
+            for (int key = lo; key < hi; key++) {
+                matches.add(new Candidate(keyScore[key], key, -1));
+            }
+        });
+        for (List<Candidate> matches : byEdits) {
+            Collections.sort(matches);
+            for (Candidate match : matches) {
+                if (result.size() == k) {
+                    return result;
+                }
+                result.add(keys[match.keyIndex]);
+            }
+        }
+        return result;
+    }
+
+    /** Hands every key within MAXEDITS edits of a prefix of PREFIX to MATCHES, once each. */
+    private void fuzzySearch(String prefix, int maxEdits, FuzzyMatches matches) {
+        int[][] rows = new int[maxKeyLength + 1][prefix.length() + 1];
+        for (int j = 0; j <= prefix.length(); j++) {
+            rows[0][j] = j;
+        }
+        fuzzyHelp(prefix, maxEdits, 0, 0, Integer.MAX_VALUE, rows, matches);
+    }
+
+    /**
+     * Walks the subtree of NODE, at DEPTH, where BEST is the fewest edits that turn PREFIX
+     * into a prefix of the path to NODE, not counting the path's full length. The minimum
+     * of a Levenshtein row never falls from one row to the next, so once it reaches BEST
+     * no key below can match with fewer edits, and the subtree is taken whole.
+     */
+    private void fuzzyHelp(String prefix, int maxEdits, int node, int depth, int best,
+                           int[][] rows, FuzzyMatches matches) {
+        int m = prefix.length();
+        int[] row = rows[depth];
+        best = Math.min(best, row[m]);
+        if (isKey.get(node) && best <= maxEdits) {
+            matches.add(keyLo[node], keyLo[node] + 1, best);
+        }
+        for (int c = firstChild[node]; c < firstChild[node + 1]; c++) {
+            int[] next = rows[depth + 1];
+            next[0] = row[0] + 1;
+            int rowMin = next[0];
+            for (int j = 1; j <= m; j++) {
+                int cost = prefix.charAt(j - 1) == label[c] ? 0 : 1;
+                next[j] = Math.min(Math.min(row[j] + 1, next[j - 1] + 1), row[j - 1] + cost);
+                rowMin = Math.min(rowMin, next[j]);
+            }
+            if (rowMin >= best) {
+                if (best <= maxEdits) {
+                    matches.add(keyLo[c], keyHi[c], best);
+                }
+            } else if (rowMin <= maxEdits) {
+                fuzzyHelp(prefix, maxEdits, c, depth + 1, best, rows, matches);
+            }
+        }
+    }
+
+    /**
+     * Returns the node reached by following the chars of STR from the root,
+     * or -1 if there is no such node.
+     */
+    private int nodeOf(String str) {
+        int node = 0;
+        for (int i = 0, n = str.length(); i < n; i++) {
+            node = child(node, str.charAt(i));
+            if (node < 0) {
+                return -1;
+            }
+        }
+        return node;
+    }
+
+    /** Binary searches the children of NODE for the one labelled C, or returns -1. */
+    private int child(int node, char c) {
+        int lo = firstChild[node];
+        int hi = firstChild[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (label[mid] < c) {
+                lo = mid + 1;
+            } else if (label[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
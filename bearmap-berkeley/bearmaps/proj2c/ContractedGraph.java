@@ -0,0 +1,384 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.WeightedEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A GraphIndex with its chains of degree-2 vertices contracted. Most vertices of an OSM
+ * street graph only shape a curved street: they join exactly two neighbors, each in both
+ * directions. Searches gain nothing from stopping at them, so every chain of such vertices
+ * between two core vertices (the others) is replaced by one shortcut edge per direction,
+ * whose weight is the length of the chain. The original edges of each shortcut are kept in
+ * a side array, so a path of shortcuts unpacks into the original edges for drawing and
+ * directions.
+ *
+ * Searches go through query, which joins a start or end inside a chain to the chain's
+ * ends. A cycle of degree-2 vertices keeps one of them as a core vertex.
+ *
+ * The contraction only depends on which edges exist, so withIndex follows an index whose
+ * weights were changed by an EdgeOverlay by recomputing the weights of the shortcuts that
+ * hold changed edges. Closed edges make their shortcuts infinitely long, and are skipped.
+ */
+public class ContractedGraph {
+    private final GraphIndex index;
+    private final int coreCount;
+    // the shortcuts out of vertex v are shortcutStart[v] .. shortcutStart[v + 1] - 1; only
+    // core vertices have any
+    private final int[] shortcutStart;
+    private final int[] shortcutTo;
+    private final double[] shortcutWeight;
+    // the original edges of shortcut s, in order, are
+    // originalEdges[edgesStart[s]] .. originalEdges[edgesStart[s + 1] - 1]
+    private final int[] edgesStart;
+    private final int[] originalEdges;
+    // the shortcut each original edge belongs to
+    private final int[] shortcutOf;
+    // the shortcut running the other way along the same chain, or -1 if s has no chain
+    private final int[] reverse;
+    // a vertex v inside a chain lies on shortcut chainShortcut[v], after chainPosition[v]
+    // of its original edges; chainShortcut[v] is -1 for core vertices
+    private final int[] chainShortcut;
+    private final int[] chainPosition;
+
+    /** Contracts the degree-2 chains of INDEX. */
+    public ContractedGraph(GraphIndex index) {
+        this.index = index;
+        int n = index.size();
+        int[] inDegree = new int[n];
+        for (int e = 0; e < index.edgeCount(); e++) {
+            inDegree[index.edgeTo(e)] += 1;
+        }
+        boolean[] core = new boolean[n];
+        int cores = 0;
+        for (int v = 0; v < n; v++) {
+            core[v] = !isChainVertex(v, inDegree);
+            if (core[v]) {
+                cores += 1;
+            }
+        }
+
+        // chain vertices that no walk from a core vertex reaches lie on cycles of chain
+        // vertices only; one vertex of each such cycle becomes a core vertex
+        boolean[] reached = new boolean[n];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int v = 0; v < n; v++) {
+                if (pass == 1 && !core[v] && !reached[v]) {
+                    core[v] = true;
+                    cores += 1;
+                } else if (!core[v] || pass == 1) {
+                    continue;
+                }
+                for (int e = index.firstEdge(v), end = index.firstEdge(v + 1); e < end; e++) {
+                    for (int w = index.edgeTo(e), prev = v; !core[w]; ) {
+                        reached[w] = true;
+                        int next = index.edgeTo(otherEdge(w, prev));
+                        prev = w;
+                        w = next;
+                    }
+                }
+            }
+        }
+        coreCount = cores;
+
+        chainShortcut = new int[n];
+        chainPosition = new int[n];
+        Arrays.fill(chainShortcut, -1);
+        shortcutStart = new int[n + 1];
+        IntList to = new IntList();
+        List<Double> weights = new ArrayList<>();
+        IntList starts = new IntList();
+        IntList edges = new IntList();
+        for (int v = 0; v < n; v++) {
+            shortcutStart[v] = to.size();
+            if (!core[v]) {
+                continue;
+            }
+            for (int e = index.firstEdge(v), end = index.firstEdge(v + 1); e < end; e++) {
+                int s = to.size();
+                starts.add(edges.size());
+                double weight = 0;
+                int prev = v;
+                int edge = e;
+                while (true) {
+                    edges.add(edge);
+                    weight += index.edgeWeight(edge);
+                    int w = index.edgeTo(edge);
+                    if (core[w]) {
+                        to.add(w);
+                        break;
+                    }
+                    // each chain vertex is recorded on the first of its two shortcuts
+                    if (chainShortcut[w] < 0) {
+                        chainShortcut[w] = s;
+                        chainPosition[w] = edges.size() - starts.get(s);
+                    }
+                    edge = otherEdge(w, prev);
+                    prev = w;
+                }
+                weights.add(weight);
+            }
+        }
+        int m = to.size();
+        shortcutStart[n] = m;
+        starts.add(edges.size());
+        edgesStart = starts.toArray();
+        originalEdges = edges.toArray();
+        shortcutTo = to.toArray();
+        shortcutWeight = new double[m];
+        shortcutOf = new int[index.edgeCount()];
+        for (int s = 0; s < m; s++) {
+            shortcutWeight[s] = weights.get(s);
+            for (int i = edgesStart[s]; i < edgesStart[s + 1]; i++) {
+                shortcutOf[originalEdges[i]] = s;
+            }
+        }
+
+        // the reverse of a chain starts with the reverse of the chain's last edge
+        int[] shortcutOfFirstEdge = new int[index.edgeCount()];
+        Arrays.fill(shortcutOfFirstEdge, -1);
+        for (int s = 0; s < m; s++) {
+            shortcutOfFirstEdge[originalEdges[edgesStart[s]]] = s;
+        }
+        reverse = new int[m];
+        for (int s = 0; s < m; s++) {
+            reverse[s] = -1;
+            if (edgesStart[s + 1] - edgesStart[s] > 1) {
+                int last = originalEdges[edgesStart[s + 1] - 1];
+                int back = index.edge(index.edgeTo(last), index.edgeFrom(last));
+                if (back >= 0) {
+                    reverse[s] = shortcutOfFirstEdge[back];
+                }
+            }
+        }
+    }
+
+    /** Shares the contraction of BASE, over INDEX, with the shortcut weights WEIGHTS. */
+    private ContractedGraph(ContractedGraph base, GraphIndex index, double[] weights) {
+        this.index = index;
+        this.coreCount = base.coreCount;
+        this.shortcutStart = base.shortcutStart;
+        this.shortcutTo = base.shortcutTo;
+        this.shortcutWeight = weights;
+        this.edgesStart = base.edgesStart;
+        this.originalEdges = base.originalEdges;
+        this.shortcutOf = base.shortcutOf;
+        this.reverse = base.reverse;
+        this.chainShortcut = base.chainShortcut;
+        this.chainPosition = base.chainPosition;
+    }
+
+    /**
+     * Returns this contraction over VIEW, an index with the same edges as the one it was
+     * built from but the weights of its overlay. Only the shortcuts holding an edge of the
+     * overlay are summed again.
+     *
+     * @throws IllegalArgumentException if VIEW does not have the same edges.
+     */
+    public ContractedGraph withIndex(GraphIndex view) {
+        if (!view.sharesEdgesWith(index)) {
+            throw new IllegalArgumentException("The index does not have the contracted edges.");
+        }
+        double[] weights = shortcutWeight.clone();
+        EdgeOverlay overlay = view.overlay();
+        for (int i = 0; i < overlay.size(); i++) {
+            int s = shortcutOf[overlay.edge(i)];
+            double weight = 0;
+            for (int j = edgesStart[s]; j < edgesStart[s + 1]; j++) {
+                weight += view.edgeWeight(originalEdges[j]);
+            }
+            weights[s] = weight;
+        }
+        return new ContractedGraph(this, view, weights);
+    }
+
+    /**
+     * Returns true if V only joins two other vertices, with one edge each way to each, so
+     * that it can be contracted into a chain.
+     */
+    private boolean isChainVertex(int v, int[] inDegree) {
+        int first = index.firstEdge(v);
+        if (index.firstEdge(v + 1) - first != 2 || inDegree[v] != 2) {
+            return false;
+        }
+        int u = index.edgeTo(first);
+        int w = index.edgeTo(first + 1);
+        return u != w && u != v && w != v && index.edge(u, v) >= 0 && index.edge(w, v) >= 0;
+    }
+
+    /** Returns the edge out of chain vertex V that does not lead back to PREV. */
+    private int otherEdge(int v, int prev) {
+        int first = index.firstEdge(v);
+        return index.edgeTo(first) == prev ? first + 1 : first;
+    }
+
+    /** Returns the number of vertices that searches over this graph visit. */
+    public int coreCount() {
+        return coreCount;
+    }
+
+    /** Returns the number of shortcut edges. */
+    public int shortcutCount() {
+        return shortcutTo.length;
+    }
+
+    public GraphIndex index() {
+        return index;
+    }
+
+    /**
+     * Returns a graph for one search from node START to node GOAL, which need not be core
+     * vertices. Its vertices are the node ids of the core vertices, plus START and GOAL,
+     * and its edges are shortcuts, or parts of them, that unpack turns back into original
+     * edges.
+     */
+    public AStarGraph<Long> query(long start, long goal) {
+        return new Query(index.indexOf(start), index.indexOf(goal));
+    }
+
+    /**
+     * Returns the original edges of PATH, a list of edges of a graph returned by query, in
+     * order.
+     */
+    public List<WeightedEdge<Long>> unpack(List<WeightedEdge<Long>> path) {
+        List<WeightedEdge<Long>> edges = new ArrayList<>();
+        for (WeightedEdge<Long> edge : path) {
+            Part part = (Part) edge;
+            for (int i = part.from; i < part.to; i++) {
+                edges.add(index.weightedEdge(originalEdges[edgesStart[part.shortcut] + i]));
+            }
+        }
+        return edges;
+    }
+
+    /** Returns the part of shortcut S made of its original edges FROM .. TO - 1. */
+    private Part part(int s, int from, int to) {
+        int first = edgesStart[s];
+        double weight = 0;
+        for (int i = from; i < to; i++) {
+            weight += index.edgeWeight(originalEdges[first + i]);
+        }
+        int fromVertex = index.edgeFrom(originalEdges[first + from]);
+        int toVertex = index.edgeTo(originalEdges[first + to - 1]);
+        return new Part(index.id(fromVertex), index.id(toVertex), weight, s, from, to);
+    }
+
+    private int length(int s) {
+        return edgesStart[s + 1] - edgesStart[s];
+    }
+
+    /** An edge of a query graph: the original edges FROM .. TO - 1 of SHORTCUT. */
+    private static class Part extends WeightedEdge<Long> {
+        private final int shortcut;
+        private final int from;
+        private final int to;
+
+        Part(long v, long w, double weight, int shortcut, int from, int to) {
+            super(v, w, weight);
+            this.shortcut = shortcut;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * The shortcut graph with edges from START, if it is inside a chain, to the chain's
+     * ends, and from the chain's ends to GOAL, if it is inside a chain.
+     */
+    private class Query implements AStarGraph<Long> {
+        private final int start;
+        private final int goal;
+
+        Query(int start, int goal) {
+            this.start = start;
+            this.goal = goal;
+        }
+
+        @Override
+        public List<WeightedEdge<Long>> neighbors(Long id) {
+            int v = index.indexOf(id);
+            List<WeightedEdge<Long>> out = new ArrayList<>();
+            if (v < 0) {
+                return out;
+            }
+            if (v == start && chainShortcut[v] >= 0) {
+                // leave the chain both ways, or follow it straight to a goal on it
+                int s = chainShortcut[v];
+                int p = chainPosition[v];
+                int goalShortcut = goal >= 0 ? chainShortcut[goal] : -1;
+                add(out, part(s, p, length(s)));
+                if (goalShortcut == s && chainPosition[goal] > p) {
+                    add(out, part(s, p, chainPosition[goal]));
+                }
+                int r = reverse[s];
+                if (r >= 0) {
+                    int q = length(s) - p;
+                    add(out, part(r, q, length(r)));
+                    if (goalShortcut == s && chainPosition[goal] < p) {
+                        add(out, part(r, q, length(s) - chainPosition[goal]));
+                    }
+                }
+                return out;
+            }
+            if (chainShortcut[v] >= 0) {
+                return out;
+            }
+            for (int s = shortcutStart[v], end = shortcutStart[v + 1]; s < end; s++) {
+                add(out, new Part(id, index.id(shortcutTo[s]), shortcutWeight[s], s, 0,
+                        length(s)));
+                // a goal inside the chain is reached part way along it
+                int goalShortcut = goal >= 0 ? chainShortcut[goal] : -1;
+                if (goalShortcut < 0) {
+                    continue;
+                }
+                if (goalShortcut == s) {
+                    add(out, part(s, 0, chainPosition[goal]));
+                } else if (goalShortcut == reverse[s]) {
+                    add(out, part(s, 0, length(s) - chainPosition[goal]));
+                }
+            }
+            return out;
+        }
+
+        /** Adds PART to OUT unless it holds a closed edge. */
+        private void add(List<WeightedEdge<Long>> out, Part part) {
+            if (part.weight() != Double.POSITIVE_INFINITY) {
+                out.add(part);
+            }
+        }
+
+        @Override
+        public double estimatedDistanceToGoal(Long s, Long goal) {
+            return index.distance(index.indexOf(s), index.indexOf(goal));
+        }
+    }
+
+    /** A growable array of ints, to build the shortcut arrays without boxing. */
+    private static class IntList {
+        private int[] items = new int[16];
+        private int size;
+
+        void add(int x) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size] = x;
+            size += 1;
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
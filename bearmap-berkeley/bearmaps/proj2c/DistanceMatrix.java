@@ -0,0 +1,46 @@
+package bearmaps.proj2c;
+
+/**
+ * The travel distances, in miles, from each of a list of sources to each of a list of
+ * targets, as computed by BatchRouter.distanceMatrix. Sources and targets are the ids of
+ * the nodes the requested locations were snapped to.
+ */
+public class DistanceMatrix {
+    private final long[] sources;
+    private final long[] targets;
+    private final double[][] distances;
+    private final boolean complete;
+
+    DistanceMatrix(long[] sources, long[] targets, double[][] distances, boolean complete) {
+        this.sources = sources;
+        this.targets = targets;
+        this.distances = distances;
+        this.complete = complete;
+    }
+
+    public long[] sources() {
+        return sources;
+    }
+
+    public long[] targets() {
+        return targets;
+    }
+
+    /**
+     * Returns the distance from source I to target J, or infinity if the target cannot
+     * be reached or was not reached within the search budget.
+     */
+    public double distance(int i, int j) {
+        return distances[i][j];
+    }
+
+    /** Returns the rows of the matrix, one per source. Do not modify. */
+    public double[][] distances() {
+        return distances;
+    }
+
+    /** Returns true if every search finished within its budget. */
+    public boolean complete() {
+        return complete;
+    }
+}
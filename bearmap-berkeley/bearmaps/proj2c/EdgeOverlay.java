@@ -0,0 +1,130 @@
+package bearmaps.proj2c;
+
+import bearmaps.proj2c.utils.LongIntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The edges of a GraphIndex whose weights have been changed since it was built, with
+ * their new weights; a closed edge has infinite weight, so no search ever relaxes it. An
+ * overlay is immutable: applying more updates makes a new one, so a search that read an
+ * overlay keeps seeing the same weights however many updates follow. Overlays are meant
+ * to stay small; GraphIndex.compact folds one into the arrays of a new index.
+ */
+public class EdgeOverlay {
+    /** The overlay of an index whose weights have not been changed. */
+    public static final EdgeOverlay EMPTY = new EdgeOverlay(new LongIntMap(0), new int[0],
+            new double[0], Collections.emptyList());
+
+    // the new weight of edge e is weights[slotOf.get(e)], if e has a slot
+    private final LongIntMap slotOf;
+    private final int[] edges;
+    private final double[] weights;
+    // every update applied since the index was built, in order
+    private final List<EdgeUpdate> updates;
+
+    private EdgeOverlay(LongIntMap slotOf, int[] edges, double[] weights,
+                        List<EdgeUpdate> updates) {
+        this.slotOf = slotOf;
+        this.edges = edges;
+        this.weights = weights;
+        this.updates = updates;
+    }
+
+    /**
+     * Returns this overlay with BATCH applied on top, in order, to the edges of INDEX. An
+     * update applies to every edge between its two nodes in its direction.
+     *
+     * @throws IllegalArgumentException if there is no edge for some update, or its new
+     *                                  weight is below the length of an edge, in which case
+     *                                  none of BATCH is applied.
+     */
+    EdgeOverlay with(GraphIndex index, List<EdgeUpdate> batch) {
+        List<int[]> targets = new ArrayList<>(batch.size());
+        for (EdgeUpdate update : batch) {
+            int[] matching = index.edges(index.indexOf(update.from()),
+                    index.indexOf(update.to()));
+            if (matching.length == 0) {
+                throw new IllegalArgumentException("No edge for update " + update + ".");
+            }
+            // searches estimate the rest of a path by its great-circle length, which must
+            // never be more than its weight
+            for (int e : matching) {
+                if (update.weight() < index.edgeLength(e)) {
+                    throw new IllegalArgumentException("Update " + update
+                            + " is below the length of its edge, " + index.edgeLength(e) + ".");
+                }
+            }
+            targets.add(matching);
+        }
+
+        int capacity = size();
+        for (int[] matching : targets) {
+            capacity += matching.length;
+        }
+        LongIntMap newSlotOf = new LongIntMap(capacity);
+        int[] newEdges = new int[capacity];
+        double[] newWeights = new double[capacity];
+        int size = 0;
+        for (int slot = 0; slot < size(); slot++) {
+            newSlotOf.put(edges[slot], size);
+            newEdges[size] = edges[slot];
+            newWeights[size] = weights[slot];
+            size += 1;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            double weight = batch.get(i).weight();
+            for (int e : targets.get(i)) {
+                int slot = newSlotOf.get(e);
+                if (slot < 0) {
+                    slot = size;
+                    size += 1;
+                    newSlotOf.put(e, slot);
+                    newEdges[slot] = e;
+                }
+                newWeights[slot] = weight;
+            }
+        }
+
+        List<EdgeUpdate> newUpdates = new ArrayList<>(updates);
+        newUpdates.addAll(batch);
+        return new EdgeOverlay(newSlotOf, trim(newEdges, size), trim(newWeights, size),
+                Collections.unmodifiableList(newUpdates));
+    }
+
+    private static int[] trim(int[] a, int size) {
+        return a.length == size ? a : Arrays.copyOf(a, size);
+    }
+
+    private static double[] trim(double[] a, int size) {
+        return a.length == size ? a : Arrays.copyOf(a, size);
+    }
+
+    public boolean isEmpty() {
+        return edges.length == 0;
+    }
+
+    /** Returns the number of edges whose weight has been changed. */
+    public int size() {
+        return edges.length;
+    }
+
+    /** Returns the I-th changed edge, as an index into the GraphIndex. */
+    public int edge(int i) {
+        return edges[i];
+    }
+
+    /** Returns the weight of edge E: its new weight if it has one, otherwise BASE. */
+    public double weight(int e, double base) {
+        int slot = slotOf.get(e);
+        return slot < 0 ? base : weights[slot];
+    }
+
+    /** Returns every update applied since the index was built, in order. */
+    public List<EdgeUpdate> updates() {
+        return updates;
+    }
+}
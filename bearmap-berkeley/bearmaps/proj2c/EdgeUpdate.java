@@ -0,0 +1,57 @@
+package bearmaps.proj2c;
+
+/**
+ * A change to the edges from one node to another: a new weight, e.g. a penalty for a
+ * slow or unpleasant street, or a closure. Only the direction from FROM to TO changes;
+ * closing a two-way street takes one update each way.
+ */
+public class EdgeUpdate {
+    private final long from;
+    private final long to;
+    private final double weight;
+
+    private EdgeUpdate(long from, long to, double weight) {
+        this.from = from;
+        this.to = to;
+        this.weight = weight;
+    }
+
+    /**
+     * Returns an update giving the edges from FROM to TO the weight WEIGHT, in miles. The
+     * weight can be no less than the length of the edges, since searches estimate the
+     * distance left by the great-circle distance; applying a shorter one fails.
+     */
+    public static EdgeUpdate weight(long from, long to, double weight) {
+        if (!(weight >= 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Edge weights must be finite and not negative.");
+        }
+        return new EdgeUpdate(from, to, weight);
+    }
+
+    /** Returns an update closing the edges from FROM to TO. */
+    public static EdgeUpdate close(long from, long to) {
+        return new EdgeUpdate(from, to, Double.POSITIVE_INFINITY);
+    }
+
+    public long from() {
+        return from;
+    }
+
+    public long to() {
+        return to;
+    }
+
+    /** Returns the new weight of the edges, or infinity if they are closed. */
+    public double weight() {
+        return weight;
+    }
+
+    public boolean closes() {
+        return weight == Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public String toString() {
+        return from + "->" + to + (closes() ? " closed" : " weight " + weight);
+    }
+}
@@ -0,0 +1,422 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.Node;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.utils.LongIntMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A dense, read-only copy of the vertices and edges of a StreetMapGraph, for searches
+ * that visit much of the graph. Vertices are numbered 0 .. size() - 1 and their
+ * coordinates kept in primitive arrays, found from node ids through a primitive map, so
+ * neither lookup boxes or hashes an object; the outgoing edges of vertex v are the edges
+ * firstEdge(v) .. firstEdge(v + 1) - 1, stored as parallel arrays of targets, weights,
+ * bearings and way name ids (compressed sparse row form). Searches over the index can keep
+ * their state in arrays indexed by vertex instead of hash maps keyed by node id. No
+ * WeightedEdge objects are kept: weightedEdge makes one from the arrays when asked.
+ *
+ * Edge weights can be changed, and edges closed, without rebuilding anything: withOverlay
+ * returns a view of the same arrays whose weights are read through an EdgeOverlay, and
+ * compact folds the overlay into a new weight array once it has grown.
+ */
+public class GraphIndex {
+    private final long[] ids;
+    private final LongIntMap indexOf;
+    private final double[] lons;
+    private final double[] lats;
+    // the edges out of vertex v are edgeStart[v] .. edgeStart[v + 1] - 1
+    private final int[] edgeStart;
+    private final int[] edgeTo;
+    private final double[] edgeWeight;
+    // the length of each edge in miles; its weight until updates change the weight
+    private final double[] edgeLength;
+    // initial bearing of each edge in degrees, as computed by NavigationDirection.bearing
+    private final float[] edgeBearing;
+    // the way name of each edge, as an index into wayNames, so names compare as ints
+    private final int[] edgeName;
+    private final String[] wayNames;
+    // the weights changed since the edge arrays were built
+    private final EdgeOverlay overlay;
+
+    /**
+     * How vertices are numbered. INPUT keeps the order of the nodes given, which for a
+     * StreetMapGraph is the order of a hash map and so scatters neighbors across memory.
+     * HILBERT numbers them along a Hilbert curve over their coordinates, so that nearby
+     * nodes, and the edges out of them, are stored near each other and a search touches
+     * fewer cache lines and pages.
+     */
+    public enum VertexOrder {
+        INPUT, HILBERT
+    }
+
+    // bits per coordinate of the Hilbert curve
+    private static final int HILBERT_BITS = 16;
+
+    private final VertexOrder order;
+
+    /** Indexes NODES, numbered in ORDER, with the edges GRAPH has out of each of them. */
+    public GraphIndex(StreetMapGraph graph, List<Node> nodes, VertexOrder order) {
+        this.order = order;
+        this.overlay = EdgeOverlay.EMPTY;
+        if (order == VertexOrder.HILBERT) {
+            nodes = hilbertOrder(nodes);
+        }
+        int n = nodes.size();
+        ids = new long[n];
+        lons = new double[n];
+        lats = new double[n];
+        indexOf = new LongIntMap(n);
+        for (int v = 0; v < n; v++) {
+            Node node = nodes.get(v);
+            ids[v] = node.id();
+            lons[v] = node.lon();
+            lats[v] = node.lat();
+            indexOf.put(node.id(), v);
+        }
+
+        edgeStart = new int[n + 1];
+        List<List<WeightedEdge<Long>>> adjacency = new ArrayList<>(n);
+        for (int v = 0; v < n; v++) {
+            List<WeightedEdge<Long>> out = graph.neighbors(ids[v]);
+            adjacency.add(out);
+            edgeStart[v + 1] = edgeStart[v] + out.size();
+        }
+        edgeTo = new int[edgeStart[n]];
+        edgeWeight = new double[edgeStart[n]];
+        edgeLength = edgeWeight;
+        edgeBearing = new float[edgeStart[n]];
+        edgeName = new int[edgeStart[n]];
+        Map<String, Integer> nameIds = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            int e = edgeStart[v];
+            for (WeightedEdge<Long> edge : adjacency.get(v)) {
+                edgeTo[e] = indexOf.get(edge.to());
+                edgeWeight[e] = edge.weight();
+                int w = edgeTo[e];
+                edgeBearing[e] = (float) Router.NavigationDirection.bearing(
+                        lons[v], lons[w], lats[v], lats[w]);
+                edgeName[e] = nameIds.computeIfAbsent(edge.getName(), name -> {
+                    names.add(name);
+                    return names.size() - 1;
+                });
+                e += 1;
+            }
+        }
+        wayNames = names.toArray(new String[0]);
+    }
+
+    /** Indexes the vertices of BASE with the given edges, read through OVERLAY. */
+    private GraphIndex(GraphIndex base, int[] edgeStart, int[] edgeTo, double[] edgeWeight,
+                       double[] edgeLength, float[] edgeBearing, int[] edgeName,
+                       EdgeOverlay overlay) {
+        this.ids = base.ids;
+        this.indexOf = base.indexOf;
+        this.lons = base.lons;
+        this.lats = base.lats;
+        this.wayNames = base.wayNames;
+        this.order = base.order;
+        this.edgeStart = edgeStart;
+        this.edgeTo = edgeTo;
+        this.edgeWeight = edgeWeight;
+        this.edgeLength = edgeLength;
+        this.edgeBearing = edgeBearing;
+        this.edgeName = edgeName;
+        this.overlay = overlay;
+    }
+
+    /**
+     * Returns a view of this index whose edge weights are those of OVERLAY, which must
+     * have been made for the edges of this index. Nothing is copied.
+     */
+    public GraphIndex withOverlay(EdgeOverlay overlay) {
+        return new GraphIndex(this, edgeStart, edgeTo, edgeWeight, edgeLength, edgeBearing,
+                edgeName, overlay);
+    }
+
+    /**
+     * Returns this index with BATCH applied on top of its overlay.
+     *
+     * @throws IllegalArgumentException if some update has no edge, or a weight below the
+     *                                  length of its edge.
+     */
+    public GraphIndex withUpdates(List<EdgeUpdate> batch) {
+        return withOverlay(overlay.with(this, batch));
+    }
+
+    /** Returns the weights changed since the edge arrays of this index were built. */
+    public EdgeOverlay overlay() {
+        return overlay;
+    }
+
+    /**
+     * Returns an index of the same vertices and edges with the weights of the overlay built
+     * into its arrays, and an empty overlay of its own. Closed edges are kept, with infinite
+     * weight, so edge numbers do not change and a later update can open them again.
+     */
+    public GraphIndex compact() {
+        if (overlay.isEmpty()) {
+            return this;
+        }
+        double[] newWeight = edgeWeight.clone();
+        for (int i = 0; i < overlay.size(); i++) {
+            int e = overlay.edge(i);
+            newWeight[e] = edgeWeight(e);
+        }
+        return new GraphIndex(this, edgeStart, edgeTo, newWeight, edgeLength, edgeBearing,
+                edgeName, EdgeOverlay.EMPTY);
+    }
+
+    /** Returns true if OTHER numbers the same vertices, so per-vertex state carries over. */
+    public boolean sharesVerticesWith(GraphIndex other) {
+        return ids == other.ids;
+    }
+
+    /** Returns true if OTHER numbers the same edges, whatever their weights. */
+    public boolean sharesEdgesWith(GraphIndex other) {
+        return edgeTo == other.edgeTo;
+    }
+
+    /** Returns NODES sorted by their position along a Hilbert curve over their bounding box. */
+    private static List<Node> hilbertOrder(List<Node> nodes) {
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (Node node : nodes) {
+            minLon = Math.min(minLon, node.lon());
+            maxLon = Math.max(maxLon, node.lon());
+            minLat = Math.min(minLat, node.lat());
+            maxLat = Math.max(maxLat, node.lat());
+        }
+        int cells = 1 << HILBERT_BITS;
+        double lonScale = maxLon > minLon ? (cells - 1) / (maxLon - minLon) : 0;
+        double latScale = maxLat > minLat ? (cells - 1) / (maxLat - minLat) : 0;
+
+        // the key takes 32 bits and the position in NODES 31, so both sort as one long
+        long[] keyed = new long[nodes.size()];
+        for (int i = 0; i < keyed.length; i++) {
+            Node node = nodes.get(i);
+            int x = (int) ((node.lon() - minLon) * lonScale);
+            int y = (int) ((node.lat() - minLat) * latScale);
+            keyed[i] = (hilbertKey(x, y) << 31) | i;
+        }
+        Arrays.sort(keyed);
+        List<Node> ordered = new ArrayList<>(keyed.length);
+        for (long k : keyed) {
+            ordered.add(nodes.get((int) (k & Integer.MAX_VALUE)));
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the distance along the Hilbert curve of the cell at X and Y, each between 0
+     * and 2^HILBERT_BITS - 1. The curve starts at cell (0, 0), so the cells of any square
+     * of side 2^k in that corner take the first 4^k distances.
+     */
+    public static long hilbertKey(int x, int y) {
+        int n = 1 << HILBERT_BITS;
+        long d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant so the curve inside it has the standard orientation
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /** Returns how the vertices of this index are numbered. */
+    public VertexOrder order() {
+        return order;
+    }
+
+    /** Returns the number of vertices. */
+    public int size() {
+        return ids.length;
+    }
+
+    /** Returns the number of edges. */
+    public int edgeCount() {
+        return edgeTo.length;
+    }
+
+    /** Returns the node id of vertex V. */
+    public long id(int v) {
+        return ids[v];
+    }
+
+    /** Returns the vertex of the node with id ID, or -1 if it is not in the graph. */
+    public int indexOf(long id) {
+        return indexOf.get(id);
+    }
+
+    public double lon(int v) {
+        return lons[v];
+    }
+
+    public double lat(int v) {
+        return lats[v];
+    }
+
+    /** Returns the first edge out of V; the edges out of V end at firstEdge(V + 1). */
+    public int firstEdge(int v) {
+        return edgeStart[v];
+    }
+
+    public int edgeTo(int e) {
+        return edgeTo[e];
+    }
+
+    /** Returns the weight of edge E, which is infinite if the edge is closed. */
+    public double edgeWeight(int e) {
+        return overlay.isEmpty() ? edgeWeight[e] : overlay.weight(e, edgeWeight[e]);
+    }
+
+    /** Returns the length of edge E in miles, which updates to its weight do not change. */
+    public double edgeLength(int e) {
+        return edgeLength[e];
+    }
+
+    /**
+     * Returns the initial bearing of edge E in degrees, precomputed as a float, which is
+     * far more precise than turn classification needs.
+     */
+    public float edgeBearing(int e) {
+        return edgeBearing[e];
+    }
+
+    /**
+     * Returns the id of the way name of edge E. Edges have the same way name exactly when
+     * they have the same id.
+     */
+    public int edgeName(int e) {
+        return edgeName[e];
+    }
+
+    /** Returns the way name with id NAME, which may be null or empty for unnamed ways. */
+    public String wayName(int name) {
+        return wayNames[name];
+    }
+
+    /** Returns the vertex edge E leaves, found by binary search over the edge ranges. */
+    public int edgeFrom(int e) {
+        int lo = 0;
+        int hi = ids.length - 1;
+        // find the last vertex whose edges start at or before e
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (edgeStart[mid] <= e) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns edge E as a new WeightedEdge, with its current weight and its way name. The
+     * index keeps no WeightedEdges, so two calls return equal edges, not the same one.
+     */
+    public WeightedEdge<Long> weightedEdge(int e) {
+        return weightedEdge(edgeFrom(e), e);
+    }
+
+    /** Returns edge E, which leaves vertex FROM, as a new WeightedEdge. */
+    private WeightedEdge<Long> weightedEdge(int from, int e) {
+        WeightedEdge<Long> edge = new WeightedEdge<>(ids[from], ids[edgeTo[e]], edgeWeight(e));
+        edge.setName(wayNames[edgeName[e]]);
+        return edge;
+    }
+
+    /** Returns the edges out of vertex V that are not closed, as new WeightedEdges. */
+    public List<WeightedEdge<Long>> openEdges(int v) {
+        List<WeightedEdge<Long>> out = new ArrayList<>(edgeStart[v + 1] - edgeStart[v]);
+        for (int e = edgeStart[v], end = edgeStart[v + 1]; e < end; e++) {
+            if (edgeWeight(e) != Double.POSITIVE_INFINITY) {
+                out.add(weightedEdge(v, e));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the edge from vertex FROM to vertex TO, or -1 if there is none, or more than
+     * one, as StreetMapGraph.getWeightedEdge does. Either vertex may be -1. Only the edges
+     * out of FROM are scanned, and street vertices have few.
+     */
+    public int edge(int from, int to) {
+        if (from < 0 || to < 0) {
+            return -1;
+        }
+        int found = -1;
+        for (int e = edgeStart[from], end = edgeStart[from + 1]; e < end; e++) {
+            if (edgeTo[e] == to) {
+                if (found >= 0) {
+                    return -1;
+                }
+                found = e;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the index of an edge with the ends and way name of EDGE, or -1 if there is
+     * none. Edges with the same ends and way name are interchangeable.
+     */
+    public int indexOfEdge(WeightedEdge<Long> edge) {
+        int from = indexOf(edge.from());
+        int to = indexOf(edge.to());
+        if (from < 0 || to < 0) {
+            return -1;
+        }
+        for (int e = edgeStart[from], end = edgeStart[from + 1]; e < end; e++) {
+            if (edgeTo[e] == to && Objects.equals(wayNames[edgeName[e]], edge.getName())) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns every edge from vertex FROM to vertex TO; either vertex may be -1. */
+    public int[] edges(int from, int to) {
+        if (from < 0 || to < 0) {
+            return new int[0];
+        }
+        int count = 0;
+        for (int e = edgeStart[from], end = edgeStart[from + 1]; e < end; e++) {
+            if (edgeTo[e] == to) {
+                count += 1;
+            }
+        }
+        int[] found = new int[count];
+        count = 0;
+        for (int e = edgeStart[from], end = edgeStart[from + 1]; e < end; e++) {
+            if (edgeTo[e] == to) {
+                found[count++] = e;
+            }
+        }
+        return found;
+    }
+
+    /** Returns the great-circle distance in miles between vertices V and W. */
+    public double distance(int v, int w) {
+        return StreetMapGraph.distance(lons[v], lons[w], lats[v], lats[w]);
+    }
+}
@@ -0,0 +1,391 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.SolverBudget;
+import bearmaps.hw4.SolverOutcome;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Shortest path searches over a GraphIndex that reuse their working memory. Distances,
+ * parents and the positions in an indexed binary heap are kept in arrays with one slot
+ * per vertex, allocated once. A slot is only valid if its stamp matches the current
+ * search, so starting a new search costs nothing however large the last one was.
+ * An IndexedSearch is not thread safe; acquire lends one search to one caller at a time
+ * from a small shared pool, and close returns it.
+ */
+public class IndexedSearch implements AutoCloseable {
+    private GraphIndex index;
+    private final double[] dist;
+    private final int[] parent;
+    private final int[] parentEdge;
+    private final int[] stamp;
+    private final int[] targetMark;
+    // settled[0 .. statesExplored - 1] are the vertices popped by the last Dijkstra search
+    private final int[] settled;
+    private int generation;
+
+    // binary min-heap of vertices ordered by priority; heapPos[v] is v's slot or -1
+    private final int[] heap;
+    private final int[] heapPos;
+    private final double[] priority;
+    private int heapSize;
+
+    private int target;
+    private int statesExplored;
+    private int maxPqSize;
+    private int edgesRelaxed;
+    private double explorationTime;
+
+    /**
+     * Searches not lent out, most recently returned first, all over the same vertices.
+     * Only as many are kept as there are processors to run them, however many threads
+     * search, and they are dropped as soon as an index over other vertices is searched,
+     * so a reloaded map does not stay reachable through them.
+     */
+    private static final Deque<IndexedSearch> IDLE = new ArrayDeque<>();
+    private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Returns a search over INDEX for the caller's use until it calls close. An idle search
+     * is reused if there is one over the same vertices, as for an index that only differs
+     * in its edge weights, such as one with updates applied; otherwise one is created.
+     */
+    public static IndexedSearch acquire(GraphIndex index) {
+        IndexedSearch search;
+        synchronized (IDLE) {
+            search = IDLE.pollFirst();
+            if (search != null && !search.index.sharesVerticesWith(index)) {
+                IDLE.clear();
+                search = null;
+            }
+        }
+        if (search == null) {
+            search = new IndexedSearch(index);
+        }
+        search.index = index;
+        return search;
+    }
+
+    /** Returns this search to the idle pool, after which the caller must not use it. */
+    @Override
+    public void close() {
+        synchronized (IDLE) {
+            IndexedSearch newest = IDLE.peekFirst();
+            if (newest != null && !newest.index.sharesVerticesWith(index)) {
+                IDLE.clear();
+            }
+            if (IDLE.size() < MAX_IDLE) {
+                IDLE.addFirst(this);
+            }
+        }
+    }
+
+    public IndexedSearch(GraphIndex index) {
+        this.index = index;
+        int n = index.size();
+        dist = new double[n];
+        parent = new int[n];
+        parentEdge = new int[n];
+        stamp = new int[n];
+        targetMark = new int[n];
+        settled = new int[n];
+        heap = new int[n];
+        heapPos = new int[n];
+        priority = new double[n];
+    }
+
+    /** Returns the index this search runs over. */
+    public GraphIndex index() {
+        return index;
+    }
+
+    /**
+     * Runs A* from vertex SOURCE to vertex TARGET, with the great-circle distance as
+     * heuristic, until TARGET is reached or BUDGET runs out. Reports outcomes the same way
+     * as AStarSolver.
+     */
+    public SolverOutcome aStar(int source, int target, SolverBudget budget) {
+        long start = System.nanoTime();
+        reset(target);
+        visit(source, 0, -1, -1);
+        push(source, index.distance(source, target));
+
+        while (heapSize > 0 && heap[0] != target && budget.allows(statesExplored)) {
+            int v = pop();
+            statesExplored += 1;
+            double dv = dist[v];
+            for (int e = index.firstEdge(v), end = index.firstEdge(v + 1); e < end; e++) {
+                int w = index.edgeTo(e);
+                double newDist = dv + index.edgeWeight(e);
+                if (newDist < distTo(w)) {
+                    edgesRelaxed += 1;
+                    visit(w, newDist, v, e);
+                    double p = index.distance(w, target) + newDist;
+                    if (heapPos[w] >= 0) {
+                        decrease(w, p);
+                    } else {
+                        push(w, p);
+                    }
+                }
+            }
+            maxPqSize = Math.max(maxPqSize, heapSize);
+        }
+        explorationTime = (System.nanoTime() - start) / 1e9;
+
+        if (heapSize == 0) {
+            return SolverOutcome.UNSOLVABLE;
+        }
+        return heap[0] == target ? SolverOutcome.SOLVED : SolverOutcome.TIMEOUT;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from vertex SOURCE until every vertex of TARGETS is settled,
+     * the queue runs empty or BUDGET runs out. Once it returns, distTo is exact for every
+     * vertex for which isSettled is true.
+     *
+     * @return false if BUDGET stopped the search before every reachable target was settled.
+     */
+    public boolean dijkstra(int source, int[] targets, SolverBudget budget) {
+        long start = System.nanoTime();
+        reset(-1);
+        // a target counts once however often it is listed; mark each with the generation
+        int remaining = 0;
+        for (int t : targets) {
+            if (targetMark[t] != generation) {
+                targetMark[t] = generation;
+                remaining += 1;
+            }
+        }
+        visit(source, 0, -1, -1);
+        push(source, 0);
+
+        while (remaining > 0 && heapSize > 0 && budget.allows(statesExplored)) {
+            int v = pop();
+            settled[statesExplored] = v;
+            statesExplored += 1;
+            if (targetMark[v] == generation) {
+                remaining -= 1;
+            }
+            relaxAll(v, Double.POSITIVE_INFINITY);
+        }
+        explorationTime = (System.nanoTime() - start) / 1e9;
+        // a queue that ran empty means the targets left are unreachable
+        return remaining == 0 || heapSize == 0;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from vertex SOURCE, settling every vertex at most
+     * MAXDISTANCE away, until BUDGET runs out. Vertices farther away never enter the
+     * queue. The vertices settled are available through settledCount and settled, in
+     * order of distance.
+     *
+     * @return false if BUDGET stopped the search before every such vertex was settled.
+     */
+    public boolean dijkstraWithin(int source, double maxDistance, SolverBudget budget) {
+        long start = System.nanoTime();
+        reset(-1);
+        visit(source, 0, -1, -1);
+        push(source, 0);
+
+        while (heapSize > 0 && budget.allows(statesExplored)) {
+            int v = pop();
+            settled[statesExplored] = v;
+            statesExplored += 1;
+            relaxAll(v, maxDistance);
+        }
+        explorationTime = (System.nanoTime() - start) / 1e9;
+        return heapSize == 0;
+    }
+
+    /** Returns the number of vertices the last Dijkstra search settled. */
+    public int settledCount() {
+        return statesExplored;
+    }
+
+    /** Returns the I-th vertex settled by the last Dijkstra search. */
+    public int settled(int i) {
+        return settled[i];
+    }
+
+    /** Relaxes every edge out of V that leads to a vertex at most BOUND away, without heuristic. */
+    private void relaxAll(int v, double bound) {
+        double dv = dist[v];
+        for (int e = index.firstEdge(v), end = index.firstEdge(v + 1); e < end; e++) {
+            int w = index.edgeTo(e);
+            double newDist = dv + index.edgeWeight(e);
+            if (newDist <= bound && newDist < distTo(w)) {
+                edgesRelaxed += 1;
+                visit(w, newDist, v, e);
+                if (heapPos[w] >= 0) {
+                    decrease(w, newDist);
+                } else {
+                    push(w, newDist);
+                }
+            }
+        }
+        maxPqSize = Math.max(maxPqSize, heapSize);
+    }
+
+    /**
+     * Returns true if the last search removed V from its queue. After dijkstra, the
+     * distance to a settled vertex is final.
+     */
+    public boolean isSettled(int v) {
+        return stamp[v] == generation && heapPos[v] < 0;
+    }
+
+    /**
+     * Returns the node ids of the path found by the last search: to its target if it was
+     * reached, otherwise to the most promising vertex left in the queue, or an empty list
+     * if the queue ran empty.
+     */
+    public List<Long> path() {
+        List<Long> path = new ArrayList<>();
+        if (heapSize == 0) {
+            return path;
+        }
+        for (int v = heap[0]; v >= 0; v = parent[v]) {
+            path.add(index.id(v));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Returns the edges of the path returned by path, in order, as indices into the
+     * GraphIndex; one fewer than the nodes of the path.
+     */
+    public int[] pathEdges() {
+        if (heapSize == 0) {
+            return new int[0];
+        }
+        int count = 0;
+        for (int v = heap[0]; parent[v] >= 0; v = parent[v]) {
+            count += 1;
+        }
+        int[] edges = new int[count];
+        for (int v = heap[0]; parent[v] >= 0; v = parent[v]) {
+            count -= 1;
+            edges[count] = parentEdge[v];
+        }
+        return edges;
+    }
+
+    /** Returns the distance from the source of the last search to vertex V, or infinity. */
+    public double distTo(int v) {
+        return stamp[v] == generation ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the distance to the target of the last search, or infinity. */
+    public double solutionWeight() {
+        return distTo(target);
+    }
+
+    public int statesExplored() {
+        return statesExplored;
+    }
+
+    public int maxPqSize() {
+        return maxPqSize;
+    }
+
+    public int edgesRelaxed() {
+        return edgesRelaxed;
+    }
+
+    /** Returns the time spent in the last search, in seconds. */
+    public double explorationTime() {
+        return explorationTime;
+    }
+
+    private void reset(int newTarget) {
+        generation += 1;
+        if (generation == 0) {
+            // the stamps wrapped around, so old stamps could look current again
+            Arrays.fill(stamp, 0);
+            Arrays.fill(targetMark, 0);
+            generation = 1;
+        }
+        heapSize = 0;
+        target = newTarget;
+        statesExplored = 0;
+        maxPqSize = 0;
+        edgesRelaxed = 0;
+    }
+
+    private void visit(int v, double d, int from, int edge) {
+        if (stamp[v] != generation) {
+            stamp[v] = generation;
+            heapPos[v] = -1;
+        }
+        dist[v] = d;
+        parent[v] = from;
+        parentEdge[v] = edge;
+    }
+
+    private void push(int v, double p) {
+        priority[v] = p;
+        heap[heapSize] = v;
+        heapPos[v] = heapSize;
+        heapSize += 1;
+        swim(heapSize - 1);
+    }
+
+    private void decrease(int v, double p) {
+        priority[v] = p;
+        swim(heapPos[v]);
+    }
+
+    private int pop() {
+        int top = heap[0];
+        heapSize -= 1;
+        heapPos[top] = -1;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPos[heap[0]] = 0;
+            sink(0);
+        }
+        return top;
+    }
+
+    private void swim(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (priority[heap[up]] <= priority[v]) {
+                break;
+            }
+            heap[i] = heap[up];
+            heapPos[heap[i]] = i;
+            i = up;
+        }
+        heap[i] = v;
+        heapPos[v] = i;
+    }
+
+    private void sink(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && priority[heap[child + 1]] < priority[heap[child]]) {
+                child += 1;
+            }
+            if (priority[v] <= priority[heap[child]]) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        heapPos[v] = i;
+    }
+}
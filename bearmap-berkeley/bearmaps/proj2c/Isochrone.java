@@ -0,0 +1,183 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.SolverBudget;
+
+import java.util.BitSet;
+
+/**
+ * The part of the street network reachable from a location within a travel distance:
+ * the nodes reached, each with its distance, and a grid mask over their bounding box
+ * marking every cell a reachable stretch of street passes through, for shading a
+ * service area. Streets that are only partly within the distance are marked up to the
+ * point where the distance runs out. Row 0 of the mask is its northern edge.
+ */
+public class Isochrone {
+    private final long origin;
+    private final long[] nodes;
+    private final double[] distances;
+    private final double ullon;
+    private final double ullat;
+    private final double lrlon;
+    private final double lrlat;
+    private final int cols;
+    private final int rows;
+    // cell (row, col) is bit row * cols + col
+    private final BitSet mask;
+    private final boolean complete;
+
+    /**
+     * Finds everything within MAXDISTANCE miles of travel from the node closest to
+     * (LON, LAT), with a mask of RESOLUTION cells along the longer side of its bounding
+     * box. The search stops early, leaving the result incomplete, if BUDGET runs out.
+     */
+    public static Isochrone compute(AugmentedStreetMapGraph g, double lon, double lat,
+                                    double maxDistance, int resolution, SolverBudget budget) {
+        if (resolution < 1) {
+            throw new IllegalArgumentException("Resolution must be positive.");
+        }
+        GraphIndex index = g.index();
+        int source = index.indexOf(g.closest(lon, lat));
+        try (IndexedSearch search = IndexedSearch.acquire(index)) {
+            boolean complete = search.dijkstraWithin(source, maxDistance, budget);
+            return new Isochrone(index, search, source, maxDistance, resolution, complete);
+        }
+    }
+
+    private Isochrone(GraphIndex index, IndexedSearch search, int source, double maxDistance,
+                      int resolution, boolean complete) {
+        this.origin = index.id(source);
+        this.complete = complete;
+        int count = search.settledCount();
+        nodes = new long[count];
+        distances = new double[count];
+
+        // the box covers the reached nodes and the reachable part of every street out of them
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            int v = search.settled(i);
+            nodes[i] = index.id(v);
+            distances[i] = search.distTo(v);
+            for (int e = index.firstEdge(v), end = index.firstEdge(v + 1); e < end; e++) {
+                double f = reachableFraction(index, e, distances[i], maxDistance);
+                double x = endLon(index, v, e, f);
+                double y = endLat(index, v, e, f);
+                minLon = Math.min(minLon, x);
+                maxLon = Math.max(maxLon, x);
+                minLat = Math.min(minLat, y);
+                maxLat = Math.max(maxLat, y);
+            }
+            minLon = Math.min(minLon, index.lon(v));
+            maxLon = Math.max(maxLon, index.lon(v));
+            minLat = Math.min(minLat, index.lat(v));
+            maxLat = Math.max(maxLat, index.lat(v));
+        }
+        if (count == 0) {
+            minLon = maxLon = minLat = maxLat = 0;
+        }
+
+        double cellSize = Math.max(maxLon - minLon, maxLat - minLat) / resolution;
+        if (cellSize == 0) {
+            cellSize = 1;
+        }
+        ullon = minLon;
+        ullat = maxLat;
+        cols = Math.max(1, (int) Math.ceil((maxLon - minLon) / cellSize));
+        rows = Math.max(1, (int) Math.ceil((maxLat - minLat) / cellSize));
+        lrlon = minLon + cols * cellSize;
+        lrlat = maxLat - rows * cellSize;
+        mask = new BitSet(rows * cols);
+
+        for (int i = 0; i < count; i++) {
+            int v = search.settled(i);
+            mark(index.lon(v), index.lat(v));
+            for (int e = index.firstEdge(v), end = index.firstEdge(v + 1); e < end; e++) {
+                double f = reachableFraction(index, e, distances[i], maxDistance);
+                markSegment(index.lon(v), index.lat(v), endLon(index, v, e, f),
+                        endLat(index, v, e, f), cellSize);
+            }
+        }
+    }
+
+    /** Returns the fraction of edge E that can be travelled after reaching its start at DIST. */
+    private static double reachableFraction(GraphIndex index, int e, double dist,
+                                            double maxDistance) {
+        double weight = index.edgeWeight(e);
+        return weight <= 0 ? 1 : Math.min(1, (maxDistance - dist) / weight);
+    }
+
+    private static double endLon(GraphIndex index, int v, int e, double f) {
+        return index.lon(v) + f * (index.lon(index.edgeTo(e)) - index.lon(v));
+    }
+
+    private static double endLat(GraphIndex index, int v, int e, double f) {
+        return index.lat(v) + f * (index.lat(index.edgeTo(e)) - index.lat(v));
+    }
+
+    /** Marks the cells along the segment, sampled at least twice per cell crossed. */
+    private void markSegment(double lon0, double lat0, double lon1, double lat1, double cellSize) {
+        double cellsCrossed = Math.max(Math.abs(lon1 - lon0), Math.abs(lat1 - lat0)) / cellSize;
+        int steps = (int) Math.ceil(2 * cellsCrossed) + 1;
+        for (int k = 0; k <= steps; k++) {
+            double t = (double) k / steps;
+            mark(lon0 + t * (lon1 - lon0), lat0 + t * (lat1 - lat0));
+        }
+    }
+
+    private void mark(double lon, double lat) {
+        int col = (int) ((lon - ullon) / (lrlon - ullon) * cols);
+        int row = (int) ((ullat - lat) / (ullat - lrlat) * rows);
+        col = Math.max(0, Math.min(cols - 1, col));
+        row = Math.max(0, Math.min(rows - 1, row));
+        mask.set(row * cols + col);
+    }
+
+    /** Returns the id of the node the search started from. */
+    public long origin() {
+        return origin;
+    }
+
+    /** Returns the ids of the nodes reached, in order of distance. */
+    public long[] nodes() {
+        return nodes;
+    }
+
+    /** Returns the distance in miles to each node of nodes(). */
+    public double[] distances() {
+        return distances;
+    }
+
+    public double ullon() {
+        return ullon;
+    }
+
+    public double ullat() {
+        return ullat;
+    }
+
+    public double lrlon() {
+        return lrlon;
+    }
+
+    public double lrlat() {
+        return lrlat;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /** Returns true if a reachable street passes through the cell at ROW and COL. */
+    public boolean covered(int row, int col) {
+        return mask.get(row * cols + col);
+    }
+
+    /** Returns true if the search reached everything within the distance. */
+    public boolean complete() {
+        return complete;
+    }
+}
@@ -1,6 +1,8 @@
 package bearmaps.proj2c;
 
 import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.server.handler.Bulkhead;
+import bearmaps.proj2c.server.metrics.Metrics;
 import bearmaps.proj2c.utils.Constants;
 
 import java.util.HashSet;
@@ -21,28 +23,132 @@ public class MapServerInitializer {
      **/
     public static void initializeServer(Map<String, APIRouteHandler> apiHandlers) {
         port(getHerokuAssignedPort());
-        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        configureThreadPool();
+        configureRouteSearch();
+        MapSnapshots.load(Constants.OSM_DB_PATH, getPointSetType());
         staticFileLocation("/static/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
-         * care about CSRF).  */
+         * care about CSRF). Admin handlers, which change server state, are the exception:
+         * they are only served for POST requests carrying ADMIN_TOKEN, and not at all if it
+         * is not set.  */
         before((request, response) -> {
             response.header("Access-Control-Allow-Origin", "*");
             response.header("Access-Control-Request-Method", "*");
             response.header("Access-Control-Allow-Headers", "*");
         });
 
+        String adminToken = getAdminToken();
         Set<String> paths = new HashSet<>();
         for (Map.Entry<String, APIRouteHandler> apiRoute : apiHandlers.entrySet()) {
             if (paths.contains(apiRoute.getKey())) {
                 throw new RuntimeException("Duplicate API Path found");
             }
-            get("/" + apiRoute.getKey(), apiRoute.getValue());
+            String route = "/" + apiRoute.getKey();
+            apiRoute.getValue().setRouteName(route);
+            Bulkhead bulkhead = getBulkhead(apiRoute.getKey());
+            if (bulkhead != null) {
+                apiRoute.getValue().setBulkhead(bulkhead);
+                Metrics.gauge("bearmaps_requests_in_flight", "Requests being processed.",
+                        bulkhead::inFlight, "route", route);
+                Metrics.gauge("bearmaps_requests_queued", "Requests waiting for admission.",
+                        bulkhead::queued, "route", route);
+            }
             paths.add(apiRoute.getKey());
+            if (apiRoute.getValue().isAdmin()) {
+                if (adminToken != null) {
+                    apiRoute.getValue().setAdminToken(adminToken);
+                    post("/" + apiRoute.getKey(), apiRoute.getValue());
+                }
+                continue;
+            }
+            get("/" + apiRoute.getKey(), apiRoute.getValue());
+            if (apiRoute.getValue().acceptsPost()) {
+                post("/" + apiRoute.getKey(), apiRoute.getValue());
+            }
         }
 
 
     }
 
+    /**
+     * Sizes the pool of threads that run request handlers from the THREAD_POOL_MAX,
+     * THREAD_POOL_MIN and THREAD_POOL_IDLE_MS environment variables. Handlers spend most
+     * of their time blocked on tile reads and image encoding, so a node serving many slow
+     * clients wants a larger pool than the default. Without THREAD_POOL_MAX the default
+     * pool is kept.
+     */
+    private static void configureThreadPool() {
+        int maxThreads = getIntEnv("THREAD_POOL_MAX", 0);
+        if (maxThreads > 0) {
+            int minThreads = getIntEnv("THREAD_POOL_MIN", Math.min(8, maxThreads));
+            int idleTimeoutMillis = getIntEnv("THREAD_POOL_IDLE_MS", 60000);
+            threadPool(maxThreads, minThreads, idleTimeoutMillis);
+        }
+    }
+
+    /**
+     * Limits every route search to ROUTE_TIMEOUT_MS milliseconds (default 20000) and
+     * ROUTE_MAX_EXPANSIONS expanded vertices (default unlimited). Searches run over the
+     * contracted graph unless ROUTE_CONTRACTION is 0.
+     */
+    private static void configureRouteSearch() {
+        int timeoutMillis = getIntEnv("ROUTE_TIMEOUT_MS", 20000);
+        int maxExpansions = getIntEnv("ROUTE_MAX_EXPANSIONS", 0);
+        Router.setSearchLimits(timeoutMillis / 1000.0,
+                maxExpansions > 0 ? maxExpansions : Long.MAX_VALUE);
+        Router.setContraction(getIntEnv("ROUTE_CONTRACTION", 1) != 0);
+    }
+
+    /**
+     * Builds the admission control for the API path PATH from environment variables named
+     * after the path, e.g. for "raster": MAX_CONCURRENT_RASTER requests are processed at
+     * once, MAX_QUEUED_RASTER more may wait (default MAX_CONCURRENT_RASTER), each for at
+     * most MAX_WAIT_MS_RASTER milliseconds (default 1000). Returns null, meaning no limit,
+     * if MAX_CONCURRENT_RASTER is not set.
+     */
+    private static Bulkhead getBulkhead(String path) {
+        String suffix = path.toUpperCase();
+        int maxConcurrent = getIntEnv("MAX_CONCURRENT_" + suffix, 0);
+        if (maxConcurrent <= 0) {
+            return null;
+        }
+        int maxQueued = getIntEnv("MAX_QUEUED_" + suffix, maxConcurrent);
+        int maxWaitMillis = getIntEnv("MAX_WAIT_MS_" + suffix, 1000);
+        return new Bulkhead(maxConcurrent, maxQueued, maxWaitMillis);
+    }
+
+    private static int getIntEnv(String name, int defaultValue) {
+        ProcessBuilder processBuilder = new ProcessBuilder();
+        if (processBuilder.environment().get(name) != null) {
+            return Integer.parseInt(processBuilder.environment().get(name));
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Reads the spatial index to use for closest-vertex queries from the POINT_SET
+     * environment variable ("kd_tree" or "grid"), so both can be benchmarked on the server.
+     */
+    private static AugmentedStreetMapGraph.PointSetType getPointSetType() {
+        ProcessBuilder processBuilder = new ProcessBuilder();
+        String pointSet = processBuilder.environment().get("POINT_SET");
+        if (pointSet != null) {
+            return AugmentedStreetMapGraph.PointSetType.valueOf(pointSet.toUpperCase());
+        }
+        return AugmentedStreetMapGraph.PointSetType.KD_TREE;
+    }
+
+    /**
+     * Reads the token that requests to admin handlers must carry from the ADMIN_TOKEN
+     * environment variable. Returns null, leaving admin handlers unserved, if it is not set
+     * or empty.
+     */
+    private static String getAdminToken() {
+        ProcessBuilder processBuilder = new ProcessBuilder();
+        String token = processBuilder.environment().get("ADMIN_TOKEN");
+        return token == null || token.isEmpty() ? null : token;
+    }
+
     private static int getHerokuAssignedPort() {
         ProcessBuilder processBuilder = new ProcessBuilder();
         if (processBuilder.environment().get("PORT") != null) {
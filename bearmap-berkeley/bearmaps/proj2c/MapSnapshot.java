@@ -0,0 +1,77 @@
+package bearmaps.proj2c;
+
+/**
+ * An immutable version of the map data served to clients: the street graph together
+ * with its spatial index and name index, all of which live in the
+ * AugmentedStreetMapGraph. A request reads the current snapshot once and uses it
+ * throughout, so it sees one consistent version even if a new snapshot is published
+ * while it is running.
+ *
+ * A snapshot has a map version, which changes only when a new map is loaded, and a
+ * generation within that version, which counts the edge updates and compactions published
+ * since. Node ids, and anything keyed by them such as stored routes, stay valid for as long
+ * as the map version does.
+ */
+public class MapSnapshot {
+    private final AugmentedStreetMapGraph graph;
+    private final long version;
+    private final long generation;
+    private final String source;
+    private final long loadedAtMillis;
+
+    public MapSnapshot(AugmentedStreetMapGraph graph, long version, String source) {
+        this(graph, version, 0, source);
+    }
+
+    public MapSnapshot(AugmentedStreetMapGraph graph, long version, long generation,
+                       String source) {
+        this.graph = graph;
+        this.version = version;
+        this.generation = generation;
+        this.source = source;
+        this.loadedAtMillis = System.currentTimeMillis();
+    }
+
+    public AugmentedStreetMapGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns the version number of the map data of this snapshot; maps loaded later have
+     * larger versions. Edge updates do not change it.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the number of edge updates and compactions published on this map version
+     * before this snapshot; 0 for a snapshot of a newly loaded map.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /** Returns the path of the file this snapshot was built from. */
+    public String source() {
+        return source;
+    }
+
+    public long loadedAtMillis() {
+        return loadedAtMillis;
+    }
+
+    /**
+     * Returns how the vertices of this snapshot's GraphIndex are numbered. Vertex numbers
+     * only mean something within one snapshot, so anything keyed by them must not outlive it.
+     */
+    public GraphIndex.VertexOrder vertexOrder() {
+        return graph.index().order();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MapSnapshot version: %d, generation: %d, source: %s, "
+                + "vertex order: %s", version, generation, source, vertexOrder());
+    }
+}
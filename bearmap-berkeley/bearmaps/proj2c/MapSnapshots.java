@@ -0,0 +1,153 @@
+package bearmaps.proj2c;
+
+import bearmaps.proj2c.server.metrics.Metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes the MapSnapshot currently served by the server. Readers never lock: they get
+ * whichever snapshot the atomic reference holds. New snapshots are built from a map file
+ * on a background thread and swapped in atomically once complete, so map data can be
+ * updated without a restart and without disturbing requests already in flight.
+ *
+ * Edge updates, such as road closures, are published the same way but without a rebuild:
+ * applyUpdates publishes a view of the current graph with the updates in its overlay, and
+ * compactAsync later folds the overlay into the graph's arrays in the background.
+ */
+public class MapSnapshots {
+    private static final AtomicReference<MapSnapshot> CURRENT = new AtomicReference<>();
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    /** Builds snapshots one at a time, off the request threads. */
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "map-snapshot-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private MapSnapshots() {
+    }
+
+    /**
+     * Returns the snapshot currently being served.
+     *
+     * @throws IllegalStateException if no snapshot has been published yet.
+     */
+    public static MapSnapshot current() {
+        MapSnapshot snapshot = CURRENT.get();
+        if (snapshot == null) {
+            throw new IllegalStateException("No map snapshot has been loaded.");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Wraps GRAPH, the graph of a newly loaded map, in a snapshot with a new map version,
+     * makes it the current one and returns it. The build timings of GRAPH replace those of
+     * the previous snapshot in Metrics.
+     */
+    public static synchronized MapSnapshot publish(AugmentedStreetMapGraph graph, String source) {
+        return publish(new MapSnapshot(graph, VERSIONS.incrementAndGet(), source));
+    }
+
+    /**
+     * Publishes GRAPH, an updated copy of the graph of SNAPSHOT, as the next generation of
+     * the same map version.
+     */
+    private static MapSnapshot publishGeneration(MapSnapshot snapshot,
+                                                 AugmentedStreetMapGraph graph) {
+        return publish(new MapSnapshot(graph, snapshot.version(), snapshot.generation() + 1,
+                snapshot.source()));
+    }
+
+    private static MapSnapshot publish(MapSnapshot snapshot) {
+        CURRENT.set(snapshot);
+        for (Map.Entry<String, Long> stage : snapshot.graph().buildTimings().entrySet()) {
+            long millis = stage.getValue() / 1_000_000;
+            Metrics.gauge("bearmaps_map_build_milliseconds",
+                    "Time taken by each stage of building the current map snapshot.",
+                    () -> millis, "stage", stage.getKey());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Builds a snapshot from the OSM file at DBPATH on the calling thread and publishes it.
+     */
+    public static MapSnapshot load(String dbPath, AugmentedStreetMapGraph.PointSetType pointSetType) {
+        return publish(new AugmentedStreetMapGraph(dbPath, pointSetType), dbPath);
+    }
+
+    /**
+     * Builds a snapshot from the OSM file at DBPATH on the background loader thread and
+     * publishes it when it is complete. The current snapshot keeps being served until then,
+     * and stays current if loading fails.
+     *
+     * @return a future completed with the new snapshot once it is published.
+     */
+    public static CompletableFuture<MapSnapshot> reloadAsync(String dbPath,
+            AugmentedStreetMapGraph.PointSetType pointSetType) {
+        return CompletableFuture.supplyAsync(() -> load(dbPath, pointSetType), LOADER);
+    }
+
+    /**
+     * Reloads the map file of the current snapshot, with the same kind of point set, as
+     * reloadAsync(String, PointSetType) does, to pick up new map data under the same path.
+     * The edge updates of the current snapshot are not carried over to the new map.
+     */
+    public static CompletableFuture<MapSnapshot> reloadAsync() {
+        MapSnapshot snapshot = current();
+        return reloadAsync(snapshot.source(), snapshot.graph().pointSetType());
+    }
+
+    /**
+     * Publishes a snapshot of the current graph with the edge updates of BATCH applied, so
+     * routes searched from then on see them at once. The snapshot is the next generation of
+     * the current map version, so stored client routes are kept.
+     *
+     * @throws IllegalArgumentException if some update has no edge, or a weight below the
+     *                                  length of its edge, in which case nothing is
+     *                                  published.
+     */
+    public static synchronized MapSnapshot applyUpdates(List<EdgeUpdate> batch) {
+        MapSnapshot snapshot = current();
+        return publishGeneration(snapshot, snapshot.graph().withUpdates(batch));
+    }
+
+    /**
+     * Folds the updates of the current snapshot into its graph on the background loader
+     * thread, and publishes the result. Updates applied while the fold runs are applied
+     * again to the result before it is published; if a new map was loaded meanwhile, the
+     * result is dropped.
+     *
+     * @return a future completed with the snapshot current once compaction is done.
+     */
+    public static CompletableFuture<MapSnapshot> compactAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            MapSnapshot snapshot = current();
+            AugmentedStreetMapGraph compacted = snapshot.graph().compacted();
+            return publishCompacted(snapshot, compacted);
+        }, LOADER);
+    }
+
+    /** Publishes COMPACTED, the graph of SNAPSHOT compacted, unless it is out of date. */
+    private static synchronized MapSnapshot publishCompacted(MapSnapshot snapshot,
+                                                             AugmentedStreetMapGraph compacted) {
+        MapSnapshot current = current();
+        if (compacted == snapshot.graph() || current.version() != snapshot.version()) {
+            return current;
+        }
+        List<EdgeUpdate> updates = current.graph().index().overlay().updates();
+        int folded = snapshot.graph().index().overlay().updates().size();
+        if (updates.size() > folded) {
+            compacted = compacted.withUpdates(updates.subList(folded, updates.size()));
+        }
+        return publishGeneration(current, compacted);
+    }
+}
@@ -0,0 +1,278 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A street graph kept off the heap, in a file that is memory-mapped rather than read, for
+ * regions too large to hold as Node and WeightedEdge objects. The file has the layout of a
+ * GraphIndex: node ids and coordinates by vertex, the edges in compressed sparse row form,
+ * and the node ids in sorted order with their vertices, so a node is found by binary
+ * search instead of through an on-heap map. Each of these arrays is mapped on its own, so
+ * the file is not limited to the 2 GB of a single buffer, and the operating system pages
+ * it in and out as searches touch it; the heap holds only the buffer objects.
+ *
+ * The graph supports what AStarSolver needs, neighbors and estimatedDistanceToGoal, plus
+ * the coordinates of each node. Edges are returned without way names, which are not
+ * stored. Reads are absolute, so a MappedGraph may be searched from several threads.
+ *
+ * Only searching is kept off the heap. The file is written from a GraphIndex, so making
+ * one still parses the whole map onto the heap once, offline (see main). The server does
+ * not serve from a MappedGraph either: closest-node queries, name search and directions
+ * need the point set, the name indexes and the way names, none of which are in the file.
+ */
+public class MappedGraph implements AStarGraph<Long> {
+    private static final int MAGIC = 0x424D4731; // "BMG1"
+    private static final int HEADER_BYTES = 24;
+
+    private final int size;
+    private final int edgeCount;
+    private final LongBuffer ids;
+    private final DoubleBuffer lons;
+    private final DoubleBuffer lats;
+    // the edges out of vertex v are edgeStart[v] .. edgeStart[v + 1] - 1
+    private final IntBuffer edgeStart;
+    private final IntBuffer edgeTo;
+    private final DoubleBuffer edgeWeight;
+    private final LongBuffer sortedIds;
+    private final IntBuffer sortedVertices;
+
+    private MappedGraph(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                .order(ByteOrder.nativeOrder());
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped graph file.");
+        }
+        size = header.getInt(4);
+        edgeCount = header.getInt(8);
+
+        // the eight byte sections come first, so that every section is aligned to its width
+        long offset = HEADER_BYTES;
+        ids = map(channel, offset, Long.BYTES, size).asLongBuffer();
+        offset += (long) Long.BYTES * size;
+        lons = map(channel, offset, Double.BYTES, size).asDoubleBuffer();
+        offset += (long) Double.BYTES * size;
+        lats = map(channel, offset, Double.BYTES, size).asDoubleBuffer();
+        offset += (long) Double.BYTES * size;
+        edgeWeight = map(channel, offset, Double.BYTES, edgeCount).asDoubleBuffer();
+        offset += (long) Double.BYTES * edgeCount;
+        sortedIds = map(channel, offset, Long.BYTES, size).asLongBuffer();
+        offset += (long) Long.BYTES * size;
+        edgeStart = map(channel, offset, Integer.BYTES, size + 1).asIntBuffer();
+        offset += (long) Integer.BYTES * (size + 1);
+        edgeTo = map(channel, offset, Integer.BYTES, edgeCount).asIntBuffer();
+        offset += (long) Integer.BYTES * edgeCount;
+        sortedVertices = map(channel, offset, Integer.BYTES, size).asIntBuffer();
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, int width, int count)
+            throws IOException {
+        long bytes = (long) width * count;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Graph too large to map: " + count + " entries.");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    /** Maps the graph stored in FILE by write. The mapping outlives the open file. */
+    public static MappedGraph open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedGraph(channel);
+        }
+    }
+
+    /**
+     * Writes the graph of the OSM file ARGS[0] to the file ARGS[1], for open to map later.
+     * The map is parsed onto the heap once to do so.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: MappedGraph <osm file> <graph file>");
+            System.exit(1);
+        }
+        write(new AugmentedStreetMapGraph(args[0]).index(), Paths.get(args[1]));
+    }
+
+    /**
+     * Writes INDEX to FILE in the form open reads, a section at a time through a small
+     * buffer, so that nothing the size of the graph is allocated besides the sorted ids.
+     */
+    public static void write(GraphIndex index, Path file) throws IOException {
+        int n = index.size();
+        int m = index.edgeCount();
+        long[] sorted = new long[n];
+        for (int v = 0; v < n; v++) {
+            sorted[v] = index.id(v);
+        }
+        Arrays.sort(sorted);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SectionWriter out = new SectionWriter(channel);
+            out.putInt(MAGIC);
+            out.putInt(n);
+            out.putInt(m);
+            out.putInt(0);
+            out.putLong(0);
+            for (int v = 0; v < n; v++) {
+                out.putLong(index.id(v));
+            }
+            for (int v = 0; v < n; v++) {
+                out.putDouble(index.lon(v));
+            }
+            for (int v = 0; v < n; v++) {
+                out.putDouble(index.lat(v));
+            }
+            for (int e = 0; e < m; e++) {
+                out.putDouble(index.edgeWeight(e));
+            }
+            for (long id : sorted) {
+                out.putLong(id);
+            }
+            for (int v = 0; v <= n; v++) {
+                out.putInt(index.firstEdge(v));
+            }
+            for (int e = 0; e < m; e++) {
+                out.putInt(index.edgeTo(e));
+            }
+            for (long id : sorted) {
+                out.putInt(index.indexOf(id));
+            }
+            out.flush();
+        }
+    }
+
+    /** Buffers the values of write, in the byte order they are mapped with. */
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer =
+                ByteBuffer.allocate(1 << 16).order(ByteOrder.nativeOrder());
+
+        SectionWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int x) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(x);
+        }
+
+        void putLong(long x) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(x);
+        }
+
+        void putDouble(double x) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(x);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /** Returns the number of vertices. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the number of edges. */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /** Returns the vertex of the node with id ID, or -1 if it is not in the graph. */
+    public int indexOf(long id) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midId = sortedIds.get(mid);
+            if (midId < id) {
+                lo = mid + 1;
+            } else if (midId > id) {
+                hi = mid - 1;
+            } else {
+                return sortedVertices.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the node id of vertex V. */
+    public long id(int v) {
+        return ids.get(v);
+    }
+
+    /** Returns the longitude of the node with id ID, or 0 if it is not in the graph. */
+    public double lon(long id) {
+        int v = indexOf(id);
+        return v < 0 ? 0.0 : lons.get(v);
+    }
+
+    /** Returns the latitude of the node with id ID, or 0 if it is not in the graph. */
+    public double lat(long id) {
+        int v = indexOf(id);
+        return v < 0 ? 0.0 : lats.get(v);
+    }
+
+    /**
+     * Returns the edges out of V, read from the mapped file, or an empty list if V is not
+     * in the graph.
+     */
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        int from = indexOf(v);
+        if (from < 0) {
+            return new ArrayList<>();
+        }
+        int start = edgeStart.get(from);
+        int end = edgeStart.get(from + 1);
+        List<WeightedEdge<Long>> out = new ArrayList<>(end - start);
+        for (int e = start; e < end; e++) {
+            out.add(new WeightedEdge<>(v, ids.get(edgeTo.get(e)), edgeWeight.get(e)));
+        }
+        return out;
+    }
+
+    /**
+     * Returns the great-circle distance between S and GOAL, as StreetMapGraph does. A node
+     * that is not in the graph is taken to be at 0, as by lon and lat.
+     */
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        int v = indexOf(s);
+        int w = indexOf(goal);
+        if (v < 0 || w < 0) {
+            return StreetMapGraph.distance(lon(s), lon(goal), lat(s), lat(goal));
+        }
+        return StreetMapGraph.distance(lons.get(v), lons.get(w), lats.get(v), lats.get(w));
+    }
+}
@@ -1,6 +1,8 @@
 package bearmaps.proj2c;
 
 import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.SolverBudget;
+import bearmaps.hw4.SolverOutcome;
 import bearmaps.hw4.WeightedEdge;
 import bearmaps.hw4.streetmap.Node;
 
@@ -17,6 +19,32 @@ import java.util.stream.Collectors;
  * @author Josh Hug, ______
  */
 public class Router {
+    /** Default limits of every route search; see setSearchLimits. */
+    private static volatile double searchTimeout = 20;
+    private static volatile long maxExpansions = Long.MAX_VALUE;
+    private static volatile boolean contraction = true;
+
+    /**
+     * Sets the limits of route searches that do not bring their own budget: at most
+     * TIMEOUT seconds and MAXEXPANSIONS expanded vertices each.
+     */
+    public static void setSearchLimits(double timeout, long maxExpansions) {
+        Router.searchTimeout = timeout;
+        Router.maxExpansions = maxExpansions;
+    }
+
+    /**
+     * Sets whether route searches run over the graph with its degree-2 chains contracted,
+     * which expands far fewer vertices, or over every vertex of the graph.
+     */
+    public static void setContraction(boolean contraction) {
+        Router.contraction = contraction;
+    }
+
+    /** Returns a fresh budget with the current search limits, to pass to route. */
+    public static SolverBudget newSearchBudget() {
+        return new SolverBudget(searchTimeout, maxExpansions, SolverBudget.DEFAULT_CHECK_INTERVAL);
+    }
 
     /**
      * Overloaded method for shortestPath that has flexibility to specify a solver
@@ -32,9 +60,158 @@ public class Router {
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
                                           double destlon, double destlat) {
+        return route(g, stlon, stlat, destlon, destlat).path;
+    }
+
+    /**
+     * Same as shortestPath, but also returns the statistics of the search that found the path.
+     *
+     * @param g       The graph to use.
+     * @param stlon   The longitude of the start location.
+     * @param stlat   The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return The shortest path together with its search statistics.
+     */
+    public static RouteResult route(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                    double destlon, double destlat) {
+        return route(g, stlon, stlat, destlon, destlat, newSearchBudget());
+    }
+
+    /**
+     * Same as route, but the search stops once BUDGET runs out or is cancelled, in which
+     * case the result has a TIMEOUT outcome and the best partial path found.
+     */
+    public static RouteResult route(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                    double destlon, double destlat, SolverBudget budget) {
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        return new AStarSolver<>(g, src, dest, 20).solution();
+        if (contraction) {
+            ContractedGraph contracted = g.contracted();
+            AStarSolver<Long> solver = new AStarSolver<>(contracted.query(src, dest), src, dest,
+                    budget);
+            return new RouteResult(solver, contracted.unpack(solver.solutionEdges()), budget);
+        }
+        AStarSolver<Long> solver = new AStarSolver<>(g, src, dest, budget);
+        return new RouteResult(solver, budget);
+    }
+
+    /**
+     * The result of a shortest path search: the path found, and statistics describing
+     * how much work the search did to find it.
+     */
+    public static class RouteResult {
+        final List<Long> path;
+        final List<WeightedEdge<Long>> edges;
+        final SolverOutcome outcome;
+        final double distance;
+        final int statesExplored;
+        final int maxPqSize;
+        final int edgesRelaxed;
+        final double explorationTime;
+        final boolean cancelled;
+
+        RouteResult(IndexedSearch search, SolverOutcome outcome, SolverBudget budget) {
+            this.path = search.path();
+            this.edges = new ArrayList<>();
+            for (int e : search.pathEdges()) {
+                this.edges.add(search.index().weightedEdge(e));
+            }
+            this.outcome = outcome;
+            this.distance = outcome == SolverOutcome.SOLVED ? search.solutionWeight() : 0.0;
+            this.statesExplored = search.statesExplored();
+            this.maxPqSize = search.maxPqSize();
+            this.edgesRelaxed = search.edgesRelaxed();
+            this.explorationTime = search.explorationTime();
+            this.cancelled = stoppedByCancel(outcome, budget);
+        }
+
+        RouteResult(AStarSolver<Long> solver, SolverBudget budget) {
+            this.path = solver.solution();
+            this.edges = solver.solutionEdges();
+            this.outcome = solver.outcome();
+            this.distance = solver.outcome() == SolverOutcome.SOLVED ? solver.solutionWeight() : 0.0;
+            this.statesExplored = solver.numStatesExplored();
+            this.maxPqSize = solver.maxPqSize();
+            this.edgesRelaxed = solver.edgesRelaxed();
+            this.explorationTime = solver.explorationTime();
+            this.cancelled = stoppedByCancel(outcome, budget);
+        }
+
+        /**
+         * The result of a search over a ContractedGraph, whose path of shortcuts unpacks to
+         * the original EDGES. The distance is summed over the original edges, in order.
+         */
+        RouteResult(AStarSolver<Long> solver, List<WeightedEdge<Long>> edges,
+                    SolverBudget budget) {
+            this.path = new ArrayList<>();
+            if (!solver.solution().isEmpty()) {
+                path.add(solver.solution().get(0));
+            }
+            double length = 0;
+            for (WeightedEdge<Long> e : edges) {
+                path.add(e.to());
+                length += e.weight();
+            }
+            this.edges = edges;
+            this.outcome = solver.outcome();
+            this.distance = solver.outcome() == SolverOutcome.SOLVED ? length : 0.0;
+            this.statesExplored = solver.numStatesExplored();
+            this.maxPqSize = solver.maxPqSize();
+            this.edgesRelaxed = solver.edgesRelaxed();
+            this.explorationTime = solver.explorationTime();
+            this.cancelled = stoppedByCancel(outcome, budget);
+        }
+
+        /**
+         * Returns true if a search that ended with OUTCOME was stopped by cancelling
+         * BUDGET. A search that finished is never cancelled, even if BUDGET was cancelled
+         * between its last check and the time this is asked, since its result is complete.
+         */
+        private static boolean stoppedByCancel(SolverOutcome outcome, SolverBudget budget) {
+            return outcome == SolverOutcome.TIMEOUT && budget.isCancelled();
+        }
+
+        /** Returns the node ids of the path, in the order visited. */
+        public List<Long> path() {
+            return path;
+        }
+
+        /** Returns the edges of the path, in order; one fewer than its nodes. */
+        public List<WeightedEdge<Long>> edges() {
+            return edges;
+        }
+
+        public SolverOutcome outcome() {
+            return outcome;
+        }
+
+        /** Returns the length of the path in miles, or 0 if no path was found. */
+        public double distance() {
+            return distance;
+        }
+
+        public int statesExplored() {
+            return statesExplored;
+        }
+
+        public int maxPqSize() {
+            return maxPqSize;
+        }
+
+        public int edgesRelaxed() {
+            return edgesRelaxed;
+        }
+
+        /** Returns the time spent searching, in seconds. */
+        public double explorationTime() {
+            return explorationTime;
+        }
+
+        /** Returns true if the search was cancelled before it could finish. */
+        public boolean cancelled() {
+            return cancelled;
+        }
     }
 
     /**
@@ -47,45 +224,83 @@ public class Router {
      * route.
      */
     public static List<NavigationDirection> routeDirections(AugmentedStreetMapGraph g, List<Long> route) {
-        if (route.size() < 2) return new ArrayList<>();
-        List<NavigationDirection> directions = new ArrayList<>();
+        // directions stop at the first pair of nodes that is not joined by a unique edge
+        GraphIndex index = g.index();
+        int[] edges = new int[Math.max(0, route.size() - 1)];
+        int count = 0;
+        for (int i = 1; i < route.size(); i++) {
+            int from = index.indexOf(route.get(i - 1));
+            int to = index.indexOf(route.get(i));
+            int e = from < 0 || to < 0 ? -1 : index.edge(from, to);
+            if (e < 0) {
+                break;
+            }
+            edges[count++] = e;
+        }
+        return edgeDirections(index, edges, count);
+    }
 
-        long fromID = route.get(0);
-        long toID = route.get(1);
-        WeightedEdge<Long> curE = g.getWeightedEdge(fromID, toID);
-        if (curE == null) return directions;
-
-        NavigationDirection curDir = new NavigationDirection();
-        curDir.direction = NavigationDirection.START;
-        if (curE.getName() != null && curE.getName().length() > 0) curDir.way = curE.getName();
-        curDir.distance = curE.weight();
-        for (int i = 2; i < route.size(); i++) {
-            WeightedEdge<Long> prevE = curE;
-
-            fromID = toID;
-            toID = route.get(i);
-            curE = g.getWeightedEdge(fromID, toID);
-            if (curE == null) {
-                directions.add(curDir);
-                return directions;
+    /**
+     * Create the list of directions corresponding to the edges of a route, such as those
+     * returned in RouteResult.edges, without looking any edge up by its nodes.
+     *
+     * @param g     The graph to use.
+     * @param edges The edges of the route, in order.
+     * @return A list of NavigationDirection objects corresponding to the input edges.
+     */
+    public static List<NavigationDirection> edgeDirections(AugmentedStreetMapGraph g,
+                                                           List<WeightedEdge<Long>> edges) {
+        GraphIndex index = g.index();
+        int[] indices = new int[edges.size()];
+        int count = 0;
+        for (WeightedEdge<Long> edge : edges) {
+            int e = index.indexOfEdge(edge);
+            if (e < 0) {
+                break;
             }
+            indices[count++] = e;
+        }
+        return edgeDirections(index, indices, count);
+    }
 
-            if (curE.getName().equals(prevE.getName())) {
-                curDir.distance += curE.weight();
+    /**
+     * Creates the directions for the first COUNT edges of INDEX listed in EDGES. Turns are
+     * classified from the bearings precomputed by the index, and way names compared by their
+     * ids, so only the arrays of the index are read.
+     */
+    private static List<NavigationDirection> edgeDirections(GraphIndex index, int[] edges, int count) {
+        List<NavigationDirection> directions = new ArrayList<>();
+        if (count == 0) return directions;
+
+        int curE = edges[0];
+        NavigationDirection curDir = startDirection(index, curE, NavigationDirection.START);
+        for (int i = 1; i < count; i++) {
+            int prevE = curE;
+            curE = edges[i];
+
+            if (index.edgeName(curE) == index.edgeName(prevE)) {
+                curDir.distance += index.edgeLength(curE);
             } else {
                 directions.add(curDir);
-
-                curDir = new NavigationDirection();
-                curDir.direction = NavigationDirection.getDirection(NavigationDirection.bearing(g.lon(prevE.from()), g.lon(prevE.to()), g.lat(prevE.from()), g.lat(prevE.to())),
-                        NavigationDirection.bearing(g.lon(curE.from()), g.lon(curE.to()), g.lat(curE.from()), g.lat(curE.to())));
-                if (curE.getName() != null && curE.getName().length() > 0) curDir.way = curE.getName();
-                curDir.distance = curE.weight();
+                curDir = startDirection(index, curE, NavigationDirection.getDirection(
+                        index.edgeBearing(prevE), index.edgeBearing(curE)));
             }
         }
         directions.add(curDir);
         return directions;
     }
 
+    /** Returns a direction of DIRECTION onto the way of edge E, covering that edge. */
+    private static NavigationDirection startDirection(GraphIndex index, int e, int direction) {
+        NavigationDirection d = new NavigationDirection();
+        d.direction = direction;
+        String name = index.wayName(index.edgeName(e));
+        if (name != null && name.length() > 0) d.way = name;
+        d.distance = index.edgeLength(e);
+        d.startNode = index.id(index.edgeFrom(e));
+        return d;
+    }
+
 
     /**
      * Class to represent a navigation direction, which consists of 3 attributes:
@@ -145,6 +360,10 @@ public class Router {
          * The distance along this way I represent.
          */
         double distance;
+        /**
+         * The id of the node where I start.
+         */
+        long startNode;
 
         /**
          * Create a default, anonymous NavigationDirection.
@@ -160,6 +379,25 @@ public class Router {
                     DIRECTIONS[direction], way, distance);
         }
 
+        /** Returns the maneuver, one of the integer constants above. */
+        public int direction() {
+            return direction;
+        }
+
+        public String way() {
+            return way;
+        }
+
+        /** Returns the distance in miles. */
+        public double distance() {
+            return distance;
+        }
+
+        /** Returns the id of the node where this direction starts. */
+        public long startNode() {
+            return startNode;
+        }
+
         /**
          * Takes the string representation of a navigation direction and converts it into
          * a Navigation Direction object.
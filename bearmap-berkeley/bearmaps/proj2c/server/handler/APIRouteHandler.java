@@ -1,12 +1,17 @@
 package bearmaps.proj2c.server.handler;
 
+import bearmaps.proj2c.server.metrics.LatencyHistogram;
+import bearmaps.proj2c.server.metrics.Metrics;
 import com.google.gson.Gson;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import static spark.Spark.halt;
 
@@ -14,6 +19,10 @@ import static spark.Spark.halt;
  * This is the base class that defines the procedure for handling an API request
  * The process is defined as such that first the request parameters are read, then
  * request is process based on those parameters and finally the response is built.
+ * A handler can be given a Bulkhead, in which case requests beyond its limits are
+ * rejected with a 503 so that slow endpoints cannot occupy every server thread.
+ * Every request is counted and the latency of each phase is recorded in Metrics,
+ * labelled with the route name of the handler.
  * <p>
  * Created by rahul
  */
@@ -22,19 +31,167 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
     /**
      * HTTP failed response.
      */
-    private static final int HALT_RESPONSE = 403;
+    protected static final int HALT_RESPONSE = 403;
+
+    /**
+     * HTTP response for requests shed under overload.
+     */
+    private static final int OVERLOADED_RESPONSE = 503;
 
     private Gson gson;
 
+    /** Admission control for this handler, or null if requests are never rejected. */
+    private volatile Bulkhead bulkhead;
+
+    /** The token admin requests must carry, or null if there is none. */
+    private volatile String adminToken;
+
+    private volatile String routeName;
+    private LongAdder requests;
+    private LongAdder errors;
+    private LongAdder rejections;
+    private LatencyHistogram parseLatency;
+    private LatencyHistogram processLatency;
+    private LatencyHistogram buildLatency;
+    private LatencyHistogram totalLatency;
+
     public APIRouteHandler() {
         gson = new Gson();
     }
 
+    /**
+     * Sets the name under which this handler's metrics are reported, typically the path it
+     * is served at.
+     *
+     * @param routeName the route label for this handler's metrics
+     */
+    public void setRouteName(String routeName) {
+        this.routeName = routeName;
+        requests = Metrics.counter("bearmaps_requests_total",
+                "Requests received.", "route", routeName);
+        errors = Metrics.counter("bearmaps_request_errors_total",
+                "Requests that failed with an exception or were halted.", "route", routeName);
+        rejections = Metrics.counter("bearmaps_requests_rejected_total",
+                "Requests shed by admission control.", "route", routeName);
+        parseLatency = phaseHistogram("parse");
+        processLatency = phaseHistogram("process");
+        buildLatency = phaseHistogram("build");
+        totalLatency = phaseHistogram("total");
+    }
+
+    public String getRouteName() {
+        return routeName;
+    }
+
+    private LatencyHistogram phaseHistogram(String phase) {
+        return Metrics.histogram("bearmaps_request_latency_seconds",
+                "Request latency by route and phase.", "route", routeName, "phase", phase);
+    }
+
+    /**
+     * Puts this handler behind BULKHEAD; requests it rejects get a 503 response with a
+     * Retry-After header.
+     *
+     * @param bulkhead the admission control to apply
+     */
+    public void setBulkhead(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Returns true if this handler should also be served for POST requests, whose form
+     * encoded body is read like query parameters. Handlers taking more parameters than fit
+     * in a URL override this.
+     *
+     * @return whether POST requests are accepted
+     */
+    public boolean acceptsPost() {
+        return false;
+    }
+
+    /**
+     * Returns true if this handler changes server state rather than reading it. Such a
+     * handler is only served for POST requests whose X-Admin-Token header holds the admin
+     * token, and is not served at all unless an admin token is configured, since the
+     * server allows requests from any origin.
+     *
+     * @return whether this is an admin handler
+     */
+    public boolean isAdmin() {
+        return false;
+    }
+
+    /**
+     * Sets the token that requests to this handler must carry, if it is an admin handler.
+     *
+     * @param adminToken the admin token
+     */
+    public void setAdminToken(String adminToken) {
+        this.adminToken = adminToken;
+    }
+
+    /** Returns true if REQUEST is a POST request carrying the admin token. */
+    private boolean isAuthorized(Request request) {
+        String token = adminToken;
+        String given = request.headers("X-Admin-Token");
+        if (token == null || given == null || !"POST".equals(request.requestMethod())) {
+            return false;
+        }
+        // compare in constant time, so the token cannot be guessed from response times
+        return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                given.getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     public Object handle(Request request, Response response) throws Exception {
-        Req requestParams = parseRequestParams(request);
-        Res result = processRequest(requestParams, response);
-        return buildJsonResponse(result);
+        if (routeName == null) {
+            setRouteName(getClass().getSimpleName());
+        }
+        requests.increment();
+        if (isAdmin() && !isAuthorized(request)) {
+            errors.increment();
+            halt(HALT_RESPONSE, "Request failed - admin token missing or wrong.");
+        }
+        Bulkhead admission = bulkhead;
+        if (admission == null) {
+            return handleRequest(request, response);
+        }
+        if (!admission.tryEnter()) {
+            rejections.increment();
+            response.header("Retry-After", String.valueOf(admission.retryAfterSeconds()));
+            halt(OVERLOADED_RESPONSE, "Server busy - retry later.");
+        }
+        try {
+            return handleRequest(request, response);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    private Object handleRequest(Request request, Response response) {
+        long start = System.nanoTime();
+        try {
+            Req requestParams = parseRequestParams(request);
+            long parsed = System.nanoTime();
+            parseLatency.record(parsed - start);
+
+            Res result = processRequest(requestParams, response);
+            long processed = System.nanoTime();
+            processLatency.record(processed - parsed);
+
+            Object body = buildJsonResponse(request, result);
+            long built = System.nanoTime();
+            buildLatency.record(built - processed);
+            totalLatency.record(built - start);
+            return body;
+        } catch (RuntimeException e) {
+            errors.increment();
+            throw e;
+        }
     }
 
     /**
@@ -64,6 +221,34 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
         return gson.toJson(result);
     }
 
+    /**
+     * Builds the response for a request from the result object. Handlers that need
+     * per-client state to build their response override this; by default the request
+     * is ignored.
+     *
+     * @param request the request object received
+     * @param result  the result computed after processing request
+     * @return the response body
+     */
+    protected Object buildJsonResponse(Request request, Res result) {
+        return buildJsonResponse(result);
+    }
+
+    /**
+     * Returns the key identifying the client that sent the request: the "token" request
+     * parameter if given, otherwise the id of the client's session.
+     *
+     * @param request the request object received
+     * @return the client key
+     */
+    protected String routeKey(Request request) {
+        String token = request.queryParams("token");
+        if (token != null && !token.isEmpty()) {
+            return token;
+        }
+        return request.session(true).id();
+    }
+
     /**
      * Validate & return a parameter map of the required request parameters.
      * Requires that all input parameters are doubles.
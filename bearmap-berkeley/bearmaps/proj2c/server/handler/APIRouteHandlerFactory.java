@@ -20,8 +20,14 @@ public class APIRouteHandlerFactory {
         handlerMap = new HashMap<>();
         handlerMap.put("raster", new RasterAPIHandler());
         handlerMap.put("route", new RoutingAPIHandler());
+        handlerMap.put("routes", new BatchRoutingAPIHandler());
+        handlerMap.put("matrix", new DistanceMatrixAPIHandler());
+        handlerMap.put("isochrone", new IsochroneAPIHandler());
+        handlerMap.put("updates", new EdgeUpdatesAPIHandler());
+        handlerMap.put("reload", new MapReloadAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
+        handlerMap.put("metrics", new MetricsAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
     }
 
@@ -0,0 +1,90 @@
+package bearmaps.proj2c.server.handler;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for one endpoint. At most maxConcurrent requests are processed at
+ * once and at most maxQueued more may wait for a slot, each for at most maxWaitMillis.
+ * Anything beyond that is rejected immediately, so an overloaded endpoint sheds load
+ * instead of tying up the server threads other endpoints need.
+ */
+public class Bulkhead {
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitMillis;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public Bulkhead(int maxConcurrent, int maxQueued, long maxWaitMillis) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Tries to admit a request. Returns true if it may proceed, in which case exit must be
+     * called once it is done, or false if it was rejected.
+     */
+    public boolean tryEnter() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            admitted.incrementAndGet();
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        try {
+            if (permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                admitted.incrementAndGet();
+                return true;
+            }
+            rejected.incrementAndGet();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /** Releases the slot taken by a request admitted by tryEnter. */
+    public void exit() {
+        permits.release();
+    }
+
+    /** Returns how many seconds a rejected client should wait before retrying. */
+    public long retryAfterSeconds() {
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(maxWaitMillis));
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /** Returns the number of requests currently being processed. */
+    public int inFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /** Returns the number of requests currently waiting for a slot. */
+    public int queued() {
+        return queued.get();
+    }
+
+    /** Returns the total number of requests admitted so far. */
+    public long admittedCount() {
+        return admitted.get();
+    }
+
+    /** Returns the total number of requests rejected so far. */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,120 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.BatchRouter;
+import bearmaps.proj2c.MapSnapshots;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for several routes at once, e.g. the legs of a multi-stop trip or
+ * routes to alternative destinations. Each route is given as one "pair" query parameter
+ * of the form start_lon,start_lat,end_lon,end_lat; the parameter is repeated for each
+ * route. The routes are found in parallel, and unlike RoutingAPIHandler this handler
+ * does not add them to the client's route.
+ */
+public class BatchRoutingAPIHandler extends APIRouteHandler<List<double[]>, Map<String, Object>> {
+
+    /** Batches are capped so that one request cannot hold the search pool for long. */
+    private static final int MAX_PAIRS = 100;
+
+    @Override
+    protected List<double[]> parseRequestParams(Request request) {
+        String[] values = request.queryParamsValues("pair");
+        if (values == null || values.length == 0) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        if (values.length > MAX_PAIRS) {
+            halt(HALT_RESPONSE, "Request failed - at most " + MAX_PAIRS + " pairs per request.");
+        }
+        List<double[]> pairs = new ArrayList<>();
+        for (String value : values) {
+            String[] parts = value.split(",");
+            if (parts.length != 4) {
+                halt(HALT_RESPONSE, "Incorrect parameters - a pair has four numbers.");
+            }
+            double[] pair = new double[4];
+            try {
+                for (int i = 0; i < 4; i++) {
+                    pair[i] = Double.parseDouble(parts[i].trim());
+                }
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+            pairs.add(pair);
+        }
+        return pairs;
+    }
+
+    /**
+     * Finds the route of every pair.
+     *
+     * @param pairs    The start_lon, start_lat, end_lon and end_lat of each route.
+     * @param response Not used by this function.
+     * @return A map with a single entry "routes", a list with one map per pair, in the order
+     * given: <br>
+     * "routing_success" : Boolean, whether a route was found. <br>
+     * "outcome" : String, the outcome of the search. <br>
+     * "distance" : Number, the length of the route in miles. <br>
+     * "nodes" : List of the node ids of the route. <br>
+     * "coordinates" : List of the [lon, lat] of each node of the route. <br>
+     * "directions" : List of the text directions of the route.
+     */
+    @Override
+    protected Map<String, Object> processRequest(List<double[]> pairs, Response response) {
+        int n = pairs.size();
+        double[] stlons = new double[n];
+        double[] stlats = new double[n];
+        double[] destlons = new double[n];
+        double[] destlats = new double[n];
+        for (int i = 0; i < n; i++) {
+            double[] pair = pairs.get(i);
+            stlons[i] = pair[0];
+            stlats[i] = pair[1];
+            destlons[i] = pair[2];
+            destlats[i] = pair[3];
+        }
+        AugmentedStreetMapGraph graph = MapSnapshots.current().graph();
+        List<Router.RouteResult> results = BatchRouter.routes(graph, stlons, stlats,
+                destlons, destlats, Router.newSearchBudget());
+
+        List<Map<String, Object>> routes = new ArrayList<>();
+        for (Router.RouteResult result : results) {
+            routes.add(routeParams(graph, result));
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("routes", routes);
+        return body;
+    }
+
+    private static Map<String, Object> routeParams(AugmentedStreetMapGraph graph,
+                                                   Router.RouteResult result) {
+        List<Long> path = result.path();
+        List<double[]> coordinates = new ArrayList<>(path.size());
+        for (long id : path) {
+            coordinates.add(new double[]{graph.lon(id), graph.lat(id)});
+        }
+        List<String> directions = new ArrayList<>();
+        for (Router.NavigationDirection d : Router.edgeDirections(graph, result.edges())) {
+            directions.add(d.toString());
+        }
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("routing_success", !path.isEmpty());
+        params.put("outcome", result.outcome().name());
+        params.put("distance", result.distance());
+        params.put("nodes", path);
+        params.put("coordinates", coordinates);
+        params.put("directions", directions);
+        return params;
+    }
+}
@@ -0,0 +1,146 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.BatchRouter;
+import bearmaps.proj2c.DistanceMatrix;
+import bearmaps.proj2c.MapSnapshots;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for travel distance matrices. The query parameters are: <br>
+ * source : a location lon,lat; repeated for each source, <br>
+ * target : a location lon,lat; repeated for each target. Without targets, the sources
+ * are used as targets, <br>
+ * format : "json" (the default) or "binary".
+ * A matrix of hundreds of points does not fit in a URL, so the parameters may also be
+ * sent as a form encoded POST body.
+ */
+public class DistanceMatrixAPIHandler extends APIRouteHandler<DistanceMatrixAPIHandler.MatrixRequest,
+        Object> {
+
+    /** Points are capped so that one request cannot hold the search pool for long. */
+    private static final int MAX_POINTS = 500;
+
+    /** The parsed locations of a request. */
+    static class MatrixRequest {
+        private double[] srcLons;
+        private double[] srcLats;
+        private double[] destLons;
+        private double[] destLats;
+        private boolean binary;
+    }
+
+    @Override
+    public boolean acceptsPost() {
+        return true;
+    }
+
+    @Override
+    protected MatrixRequest parseRequestParams(Request request) {
+        MatrixRequest matrixRequest = new MatrixRequest();
+        String[] sources = request.queryParamsValues("source");
+        String[] targets = request.queryParamsValues("target");
+        if (sources == null || sources.length == 0) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        if (targets == null || targets.length == 0) {
+            targets = sources;
+        }
+        if (sources.length > MAX_POINTS || targets.length > MAX_POINTS) {
+            halt(HALT_RESPONSE, "Request failed - at most " + MAX_POINTS
+                    + " sources and targets per request.");
+        }
+        matrixRequest.srcLons = new double[sources.length];
+        matrixRequest.srcLats = new double[sources.length];
+        parseLocations(sources, matrixRequest.srcLons, matrixRequest.srcLats);
+        matrixRequest.destLons = new double[targets.length];
+        matrixRequest.destLats = new double[targets.length];
+        parseLocations(targets, matrixRequest.destLons, matrixRequest.destLats);
+        matrixRequest.binary = "binary".equals(request.queryParams("format"));
+        return matrixRequest;
+    }
+
+    private static void parseLocations(String[] values, double[] lons, double[] lats) {
+        for (int i = 0; i < values.length; i++) {
+            String[] parts = values[i].split(",");
+            if (parts.length != 2) {
+                halt(HALT_RESPONSE, "Incorrect parameters - a location is lon,lat.");
+            }
+            try {
+                lons[i] = Double.parseDouble(parts[0].trim());
+                lats[i] = Double.parseDouble(parts[1].trim());
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+        }
+    }
+
+    /**
+     * Computes the distance in miles from every source to every target.
+     *
+     * @return In JSON format, a map of: <br>
+     * "sources" : List of the node ids the sources were snapped to. <br>
+     * "targets" : List of the node ids the targets were snapped to. <br>
+     * "distances" : List of rows, one per source, of the distance to each target, or null
+     * if the target was not reached. <br>
+     * "complete" : Boolean, false if the search budget ran out before every row was done.
+     * <br>
+     * In binary format, a byte array of: the number of rows and of columns as big-endian
+     * 32-bit ints, then the distances row by row as big-endian 64-bit doubles, infinity if
+     * a target was not reached.
+     */
+    @Override
+    protected Object processRequest(MatrixRequest request, Response response) {
+        DistanceMatrix matrix = BatchRouter.distanceMatrix(MapSnapshots.current().graph(),
+                request.srcLons, request.srcLats, request.destLons, request.destLats,
+                Router.newSearchBudget());
+        if (request.binary) {
+            response.type("application/octet-stream");
+            return toBytes(matrix);
+        }
+
+        Double[][] distances = new Double[matrix.sources().length][];
+        for (int i = 0; i < distances.length; i++) {
+            double[] row = matrix.distances()[i];
+            distances[i] = new Double[row.length];
+            for (int j = 0; j < row.length; j++) {
+                distances[i][j] = Double.isInfinite(row[j]) ? null : row[j];
+            }
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("sources", matrix.sources());
+        body.put("targets", matrix.targets());
+        body.put("distances", distances);
+        body.put("complete", matrix.complete());
+        return body;
+    }
+
+    private static byte[] toBytes(DistanceMatrix matrix) {
+        int rows = matrix.sources().length;
+        int cols = matrix.targets().length;
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + rows * cols * Double.BYTES);
+        buffer.putInt(rows).putInt(cols);
+        for (double[] row : matrix.distances()) {
+            for (double d : row) {
+                buffer.putDouble(d);
+            }
+        }
+        return buffer.array();
+    }
+
+    @Override
+    protected Object buildJsonResponse(Object result) {
+        if (result instanceof byte[]) {
+            return result;
+        }
+        return super.buildJsonResponse(result);
+    }
+}
@@ -0,0 +1,112 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.EdgeUpdate;
+import bearmaps.proj2c.MapSnapshot;
+import bearmaps.proj2c.MapSnapshots;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static spark.Spark.halt;
+
+/**
+ * Handles edge updates, such as road closures, which routes searched after the request
+ * see at once. The query parameters are: <br>
+ * edge : from,to,weight to give the edges from node from to node to a new weight in
+ * miles, or from,to,closed to close them; repeated for each update, <br>
+ * compact : if present, the updates applied so far are folded into the graph in the
+ * background afterwards.
+ * The parameters may be given in the URL or as a form encoded body. A batch is applied
+ * whole or not at all. This is an admin handler: it only serves POST requests carrying
+ * the admin token.
+ */
+public class EdgeUpdatesAPIHandler extends APIRouteHandler<EdgeUpdatesAPIHandler.UpdateRequest,
+        Map<String, Object>> {
+
+    /** Updates are capped so that one request cannot build an overlay of the whole map. */
+    private static final int MAX_UPDATES = 1000;
+
+    /** The parsed updates of a request. */
+    static class UpdateRequest {
+        private final List<EdgeUpdate> updates = new ArrayList<>();
+        private boolean compact;
+    }
+
+    @Override
+    public boolean isAdmin() {
+        return true;
+    }
+
+    @Override
+    protected UpdateRequest parseRequestParams(Request request) {
+        UpdateRequest updateRequest = new UpdateRequest();
+        String[] edges = request.queryParamsValues("edge");
+        updateRequest.compact = request.queryParams("compact") != null;
+        if ((edges == null || edges.length == 0) && !updateRequest.compact) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        if (edges == null) {
+            return updateRequest;
+        }
+        if (edges.length > MAX_UPDATES) {
+            halt(HALT_RESPONSE, "Request failed - at most " + MAX_UPDATES
+                    + " updates per request.");
+        }
+        for (String edge : edges) {
+            String[] parts = edge.split(",");
+            if (parts.length != 3) {
+                halt(HALT_RESPONSE, "Incorrect parameters - an edge is from,to,weight or "
+                        + "from,to,closed.");
+            }
+            try {
+                long from = Long.parseLong(parts[0].trim());
+                long to = Long.parseLong(parts[1].trim());
+                String weight = parts[2].trim();
+                updateRequest.updates.add("closed".equals(weight)
+                        ? EdgeUpdate.close(from, to)
+                        : EdgeUpdate.weight(from, to, Double.parseDouble(weight)));
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is an IllegalArgumentException too
+                halt(HALT_RESPONSE, "Incorrect parameters - " + e.getMessage());
+            }
+        }
+        return updateRequest;
+    }
+
+    /**
+     * Applies the updates of the request and starts compaction if asked to.
+     *
+     * @return A map of: <br>
+     * "version" : Number, the map version of the snapshot the updates were published in,
+     * which updates do not change. <br>
+     * "generation" : Number, the generation of that snapshot within its map version. <br>
+     * "overlay" : Number, the number of edges whose weights are read from the overlay of
+     * that snapshot. <br>
+     * "compacting" : Boolean, true if compaction was started.
+     */
+    @Override
+    protected Map<String, Object> processRequest(UpdateRequest request, Response response) {
+        MapSnapshot snapshot = MapSnapshots.current();
+        if (!request.updates.isEmpty()) {
+            try {
+                snapshot = MapSnapshots.applyUpdates(request.updates);
+            } catch (IllegalArgumentException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - " + e.getMessage());
+            }
+        }
+        if (request.compact) {
+            MapSnapshots.compactAsync();
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("version", snapshot.version());
+        body.put("generation", snapshot.generation());
+        body.put("overlay", snapshot.graph().index().overlay().size());
+        body.put("compacting", request.compact);
+        return body;
+    }
+}
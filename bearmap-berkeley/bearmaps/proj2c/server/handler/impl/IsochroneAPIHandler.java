@@ -0,0 +1,88 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.Isochrone;
+import bearmaps.proj2c.MapSnapshots;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for everything reachable within a travel distance of a location.
+ * The query parameters are: <br>
+ * lon, lat : the location, <br>
+ * distance : the travel distance in miles, <br>
+ * resolution : if present, the number of mask cells along the longer side of the
+ * reachable area, at most MAX_RESOLUTION (default DEFAULT_RESOLUTION).
+ */
+public class IsochroneAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    private static final String[] REQUIRED_ISOCHRONE_REQUEST_PARAMS = {"lon", "lat", "distance"};
+    private static final int DEFAULT_RESOLUTION = 64;
+    private static final int MAX_RESOLUTION = 512;
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ISOCHRONE_REQUEST_PARAMS);
+        if (request.queryParams("resolution") != null) {
+            params.putAll(getRequestParams(request, new String[]{"resolution"}));
+        }
+        if (!(params.get("distance") >= 0)) {
+            halt(HALT_RESPONSE, "Incorrect parameters - distance must not be negative.");
+        }
+        return params;
+    }
+
+    /**
+     * Finds everything within the requested distance of the requested location.
+     *
+     * @return A map of results as specified: <br>
+     * "origin" : Number, the id of the node the location was snapped to. <br>
+     * "nodes" : List of the ids of the nodes reached, nearest first. <br>
+     * "distances" : List of the distance in miles to each node of "nodes". <br>
+     * "ullon", "ullat", "lrlon", "lrlat" : Number, the bounding box of the mask. <br>
+     * "rows", "cols" : Number, the size of the mask. <br>
+     * "mask" : List of rows, north to south, each a String with one char per cell, west
+     * to east: '1' if a reachable street passes through the cell, else '0'. <br>
+     * "complete" : Boolean, false if the search budget ran out first.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Map<String, Double> params, Response response) {
+        int resolution = params.containsKey("resolution")
+                ? (int) Math.max(1, Math.min(MAX_RESOLUTION, params.get("resolution")))
+                : DEFAULT_RESOLUTION;
+        Isochrone isochrone = Isochrone.compute(MapSnapshots.current().graph(),
+                params.get("lon"), params.get("lat"), params.get("distance"), resolution,
+                Router.newSearchBudget());
+
+        List<String> mask = new ArrayList<>(isochrone.rows());
+        char[] row = new char[isochrone.cols()];
+        for (int r = 0; r < isochrone.rows(); r++) {
+            for (int c = 0; c < isochrone.cols(); c++) {
+                row[c] = isochrone.covered(r, c) ? '1' : '0';
+            }
+            mask.add(new String(row));
+        }
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("origin", isochrone.origin());
+        body.put("nodes", isochrone.nodes());
+        body.put("distances", isochrone.distances());
+        body.put("ullon", isochrone.ullon());
+        body.put("ullat", isochrone.ullat());
+        body.put("lrlon", isochrone.lrlon());
+        body.put("lrlat", isochrone.lrlat());
+        body.put("rows", isochrone.rows());
+        body.put("cols", isochrone.cols());
+        body.put("mask", mask);
+        body.put("complete", isochrone.complete());
+        return body;
+    }
+}
@@ -0,0 +1,51 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.MapSnapshot;
+import bearmaps.proj2c.MapSnapshots;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Handles requests to reload the map file the server was started with, so that new map
+ * data is served without a restart. The new snapshot is built in the background and
+ * swapped in once complete; requests keep being served from the current one until then.
+ * Takes no parameters. This is an admin handler: it only serves POST requests carrying
+ * the admin token.
+ */
+public class MapReloadAPIHandler extends APIRouteHandler<Void, Map<String, Object>> {
+
+    @Override
+    public boolean isAdmin() {
+        return true;
+    }
+
+    @Override
+    protected Void parseRequestParams(Request request) {
+        return null;
+    }
+
+    /**
+     * Starts reloading the map.
+     *
+     * @return A map of: <br>
+     * "version" : Number, the map version being served while the reload runs. <br>
+     * "source" : String, the map file being reloaded.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Void requestParams, Response response) {
+        MapSnapshot snapshot = MapSnapshots.current();
+        // if loading fails the current snapshot stays; only the log can say why
+        MapSnapshots.reloadAsync().exceptionally(e -> {
+            e.printStackTrace();
+            return null;
+        });
+        Map<String, Object> body = new HashMap<>();
+        body.put("version", snapshot.version());
+        body.put("source", snapshot.source());
+        return body;
+    }
+}
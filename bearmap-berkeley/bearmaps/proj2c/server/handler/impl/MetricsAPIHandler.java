@@ -0,0 +1,28 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.server.metrics.Metrics;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Serves all server metrics in the Prometheus text exposition format.
+ */
+public class MetricsAPIHandler extends APIRouteHandler<Object, String> {
+
+    @Override
+    protected Object parseRequestParams(Request request) {
+        return null;
+    }
+
+    @Override
+    protected String processRequest(Object requestParams, Response response) {
+        response.type("text/plain; version=0.0.4");
+        return Metrics.scrape();
+    }
+
+    @Override
+    protected Object buildJsonResponse(String result) {
+        return result;
+    }
+}
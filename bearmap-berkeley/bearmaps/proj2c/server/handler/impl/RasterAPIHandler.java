@@ -2,6 +2,9 @@ package bearmaps.proj2c.server.handler.impl;
 
 import bearmaps.proj2ab.Point;
 import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.GraphIndex;
+import bearmaps.proj2c.MapSnapshot;
+import bearmaps.proj2c.MapSnapshots;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
@@ -231,13 +234,18 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
 
     /*******************************************************************************/
 
+    /**
+     * Renders the rastered image, with the route of the requesting client drawn on it.
+     */
     @Override
-    protected Object buildJsonResponse(Map<String, Object> result) {
+    protected Object buildJsonResponse(Request request, Map<String, Object> result) {
         boolean rasterSuccess = validateRasteredImgParams(result);
 
         if (rasterSuccess) {
             ByteArrayOutputStream os = new ByteArrayOutputStream();
-            writeImagesToOutputStream(result, os);
+            MapSnapshot snapshot = MapSnapshots.current();
+            List<Long> route = ROUTES.get(routeKey(request), snapshot.version());
+            writeImagesToOutputStream(result, snapshot.graph(), route, os);
             String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
             result.put("b64_encoded_image_data", encodedImage);
         }
@@ -284,6 +292,7 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
      * we made this into provided code since it was just a bit too low level.
      */
     private void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
+                                           AugmentedStreetMapGraph graph, List<Long> route,
                                            ByteArrayOutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
         int numVertTiles = renderGrid.length;
@@ -314,21 +323,27 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
 
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
-        AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
-        List<Long> route = ROUTE_LIST;
 
         if (route != null && !route.isEmpty()) {
             Graphics2D g2d = (Graphics2D) graphic;
             g2d.setColor(Constants.ROUTE_STROKE_COLOR);
             g2d.setStroke(new BasicStroke(Constants.ROUTE_STROKE_WIDTH_PX,
                     BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
-                g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
-                        (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
+            // each node is looked up once, then its coordinates are read from the index
+            GraphIndex index = graph.index();
+            int prevPx = 0, prevPy = 0;
+            for (int i = 0; i < route.size(); i++) {
+                int v = index.indexOf(route.get(i));
+                double lon = v < 0 ? 0.0 : index.lon(v);
+                double lat = v < 0 ? 0.0 : index.lat(v);
+                int px = (int) ((lon - ullon) * (1 / wdpp));
+                int py = (int) ((ullat - lat) * (1 / hdpp));
+                if (i > 0) {
+                    g2d.drawLine(prevPx, prevPy, px, py);
+                }
+                prevPx = px;
+                prevPy = py;
+            }
         }
 
         rasteredImageParams.put("raster_width", img.getWidth());
@@ -1,23 +1,37 @@
 package bearmaps.proj2c.server.handler.impl;
 
+import bearmaps.hw4.SolverBudget;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.MapSnapshot;
+import bearmaps.proj2c.MapSnapshots;
 import bearmaps.proj2c.Router;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.server.metrics.LatencyHistogram;
+import bearmaps.proj2c.server.metrics.Metrics;
+import bearmaps.proj2c.utils.Tuple;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import spark.Request;
 import spark.Response;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
-import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2c.utils.Constants.ROUTES;
 
 /**
  * Handles requests from the web browser for routes between locations. The
  * route will be returned as image data, as well as (optionally) driving directions. *
  * Created by rahul
  */
-public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+public class RoutingAPIHandler extends APIRouteHandler<Tuple<String, Map<String, Double>>,
+        Map<String, Object>> {
 
     /**
      * Each route request to the server will have the following parameters
@@ -28,9 +42,38 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     private static final String[] REQUIRED_ROUTE_REQUEST_PARAMS = {"start_lat", "start_lon",
             "end_lat", "end_lon"};
 
+    /** Statistics of every A* search run for a route request. */
+    private static final LatencyHistogram SEARCH_TIME = Metrics.histogram(
+            "bearmaps_astar_search_seconds", "Time spent in A* search per route.");
+    private static final LatencyHistogram STATES_EXPLORED = Metrics.distribution(
+            "bearmaps_astar_states_explored", "Vertices removed from the A* queue per route.");
+    private static final LatencyHistogram EDGES_RELAXED = Metrics.distribution(
+            "bearmaps_astar_edges_relaxed", "Edges that improved a distance per route.");
+    private static final LatencyHistogram MAX_PQ_SIZE = Metrics.distribution(
+            "bearmaps_astar_max_pq_size", "Largest A* queue size per route.");
+    private static final LatencyHistogram ROUTE_LENGTH = Metrics.distribution(
+            "bearmaps_route_length_nodes", "Number of nodes on each route found.");
+
+    /** Writes the debug statistics of structured results. */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The budget of the search running for each route key. A client that asks for a new
+     * route before its previous one is found has given up on the previous one, so that
+     * search is cancelled instead of finishing for nobody.
+     */
+    private static final Map<String, SolverBudget> SEARCHES = new ConcurrentHashMap<>();
+
     @Override
-    protected Map<String, Double> parseRequestParams(Request request) {
-        return getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+    protected Tuple<String, Map<String, Double>> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+        if (request.queryParams("debug") != null) {
+            params.put("debug", 1.0);
+        }
+        if ("structured".equals(request.queryParams("directions"))) {
+            params.put("structured", 1.0);
+        }
+        return new Tuple<>(routeKey(request), params);
     }
 
     /**
@@ -38,15 +81,15 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * street directions between the given points. THis method has been
      * completed for you.
      *
-     * The route to draw on the map should be added to the end of
-     * bearmaps.proj2c.utils.Constants.ROUTE_LIST. This is a LinkedList of longs,
+     * The route to draw on the map is added to the end of the client's route in
+     * bearmaps.proj2c.utils.Constants.ROUTES. A route is a list of longs,
      * where each long corresponds to one point on the map.
      *
      * Street directions can also be provided in the form of text as a return
      * value to this function.
      *
-     * @param requestParams Map of the HTTP GET request's query parameters - the starting lat/long
-     *                      and the destination lat/lon.
+     * @param requestParams The client's route key, and a map of the HTTP GET request's query
+     *                      parameters - the starting lat/long and the destination lat/lon.
      *
      * @param response : Not used by this function. You may ignore.
      * @return A map of results for the front end as specified: <br>
@@ -55,30 +98,170 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * "directions_success" : Boolean, whether the query generated text directions (i.e. if
      *                        length of directions is > 0).
      * "directions"      : String. The text directions you want to display, in HTML format.
+     *                     If the request has directions=structured, "directions" is left
+     *                     out and the directions are given as "ways", "maneuvers" and
+     *                     "steps" instead; see writeStructured.
+     * "debug"           : Map, only if the request has a debug parameter: the statistics of
+     *                     the search that found the route.
      */
     @Override
-    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
-        List<Long> route = Router.shortestPath(
-                SEMANTIC_STREET_GRAPH,
-                requestParams.get("start_lon"), requestParams.get("start_lat"),
-                requestParams.get("end_lon"), requestParams.get("end_lat"));
-        ROUTE_LIST.addAll(route);
-        String directions = getDirectionsText();
+    protected Map<String, Object> processRequest(Tuple<String, Map<String, Double>> requestParams,
+                                                 Response response) {
+        String key = requestParams.getFirst();
+        Map<String, Double> params = requestParams.getSecond();
+        MapSnapshot snapshot = MapSnapshots.current();
+        Router.RouteResult result = route(key, snapshot.graph(), params);
+        recordSearch(result);
+        List<Long> route = result.cancelled() ? Collections.emptyList() : result.path();
+        List<Long> clientRoute = result.cancelled()
+                ? ROUTES.get(key, snapshot.version())
+                : ROUTES.append(key, snapshot.version(), route);
 
         Map<String, Object> routeParams = new HashMap<>();
         routeParams.put("routing_success", !route.isEmpty());
-        routeParams.put("directions_success", directions.length() > 0);
-        routeParams.put("directions", directions);
+        if (params.containsKey("structured")) {
+            List<Router.NavigationDirection> steps =
+                    Router.routeDirections(snapshot.graph(), clientRoute);
+            routeParams.put("directions_success", !steps.isEmpty());
+            routeParams.put("steps", steps);
+        } else {
+            String directions = getDirectionsText(snapshot.graph(), clientRoute);
+            routeParams.put("directions_success", directions.length() > 0);
+            routeParams.put("directions", directions);
+        }
+        if (params.containsKey("debug")) {
+            routeParams.put("debug", debugParams(result));
+        }
         return routeParams;
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Finds the route requested by PARAMS for the client KEY, cancelling any search still
+     * running for an earlier request of the same client. A search cancelled this way
+     * returns a cancelled result, whose route must not be kept.
+     */
+    private static Router.RouteResult route(String key, AugmentedStreetMapGraph graph,
+                                            Map<String, Double> params) {
+        SolverBudget budget = Router.newSearchBudget();
+        SolverBudget previous = SEARCHES.put(key, budget);
+        if (previous != null) {
+            previous.cancel();
+        }
+        try {
+            return Router.route(graph,
+                    params.get("start_lon"), params.get("start_lat"),
+                    params.get("end_lon"), params.get("end_lat"), budget);
+        } finally {
+            SEARCHES.remove(key, budget);
+        }
+    }
+
+    /**
+     * Writes results with structured directions straight to JSON; all other results are
+     * converted by Gson as usual.
+     */
+    @Override
+    protected Object buildJsonResponse(Map<String, Object> result) {
+        if (!result.containsKey("steps")) {
+            return super.buildJsonResponse(result);
+        }
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writeStructured(writer, result);
+        } catch (IOException e) {
+            // a StringWriter never throws
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes a result with structured directions as a JSON object of: <br>
+     * "routing_success", "directions_success" : Boolean, as for text directions. <br>
+     * "maneuvers" : List of the name of each maneuver code, e.g. "Turn left". <br>
+     * "ways" : List of the distinct way names used by the steps. <br>
+     * "steps" : List of the steps of the route, each a list of its maneuver code, the
+     * index of its way in "ways", its distance in miles and the id of the node where it
+     * starts. <br>
+     * "debug" : as for text directions.
+     * The text of step i is "{maneuvers[m]} on {ways[w]} and continue for {d} miles."
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeStructured(JsonWriter writer, Map<String, Object> result)
+            throws IOException {
+        List<Router.NavigationDirection> steps =
+                (List<Router.NavigationDirection>) result.get("steps");
+        writer.beginObject();
+        writer.name("routing_success").value((Boolean) result.get("routing_success"));
+        writer.name("directions_success").value((Boolean) result.get("directions_success"));
+
+        writer.name("maneuvers").beginArray();
+        for (String maneuver : Router.NavigationDirection.DIRECTIONS) {
+            writer.value(maneuver);
+        }
+        writer.endArray();
+
+        Map<String, Integer> wayIds = new HashMap<>();
+        writer.name("ways").beginArray();
+        for (Router.NavigationDirection step : steps) {
+            if (!wayIds.containsKey(step.way())) {
+                wayIds.put(step.way(), wayIds.size());
+                writer.value(step.way());
+            }
+        }
+        writer.endArray();
+
+        writer.name("steps").beginArray();
+        for (Router.NavigationDirection step : steps) {
+            writer.beginArray();
+            writer.value(step.direction());
+            writer.value(wayIds.get(step.way()));
+            writer.value(step.distance());
+            writer.value(step.startNode());
+            writer.endArray();
+        }
+        writer.endArray();
+
+        if (result.containsKey("debug")) {
+            writer.name("debug");
+            GSON.toJson(result.get("debug"), Map.class, writer);
+        }
+        writer.endObject();
+    }
+
+    private static void recordSearch(Router.RouteResult result) {
+        SEARCH_TIME.record((long) (result.explorationTime() * 1e9));
+        STATES_EXPLORED.record(result.statesExplored());
+        EDGES_RELAXED.record(result.edgesRelaxed());
+        MAX_PQ_SIZE.record(result.maxPqSize());
+        ROUTE_LENGTH.record(result.path().size());
+        Metrics.counter("bearmaps_astar_outcomes_total", "A* searches by outcome.",
+                "outcome", outcomeName(result)).increment();
+    }
+
+    private static Map<String, Object> debugParams(Router.RouteResult result) {
+        Map<String, Object> debug = new HashMap<>();
+        debug.put("outcome", outcomeName(result));
+        debug.put("exploration_time", result.explorationTime());
+        debug.put("states_explored", result.statesExplored());
+        debug.put("edges_relaxed", result.edgesRelaxed());
+        debug.put("max_pq_size", result.maxPqSize());
+        debug.put("route_nodes", result.path().size());
+        debug.put("route_miles", result.distance());
+        return debug;
+    }
+
+    private static String outcomeName(Router.RouteResult result) {
+        return result.cancelled() ? "CANCELLED" : result.outcome().name();
+    }
+
+    /**
+     * Takes the route of a client and converts it into an HTML friendly
      * String to be passed to the frontend.
      */
-    private String getDirectionsText() {
+    private String getDirectionsText(AugmentedStreetMapGraph graph, List<Long> route) {
 
-        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, ROUTE_LIST);
+        List<Router.NavigationDirection> directions = Router.routeDirections(graph, route);
         if (directions == null || directions.isEmpty()) {
             return "";
         }
@@ -1,35 +1,59 @@
 package bearmaps.proj2c.server.handler.impl;
 
+import bearmaps.proj2c.MapSnapshots;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
-import bearmaps.proj2c.utils.Tuple;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
 
 /**
+ * Handles location search requests. The query parameters are: <br>
+ * term : the search term, <br>
+ * full : if present, return full data for locations matching <code>term</code> exactly, <br>
+ * limit : if present, return only the <code>limit</code> best ranked prefix matches, <br>
+ * fuzzy : if present, the number of typos tolerated in <code>term</code>, at most
+ * MAX_FUZZY_EDITS and fewer than its letters; with <code>limit</code>, the matches with
+ * the fewest typos are returned.
  * Created by rahul
  */
-public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>, Object> {
+public class SearchAPIHandler extends APIRouteHandler<Map<String, String>, Object> {
 
+    /** Typo tolerance is capped to keep fuzzy searches within a few milliseconds. */
+    private static final int MAX_FUZZY_EDITS = 2;
 
     @Override
-    protected Tuple<Set<String>, String> parseRequestParams(Request request) {
-        return new Tuple<>(request.queryParams(), request.queryParams("term"));
+    protected Map<String, String> parseRequestParams(Request request) {
+        Map<String, String> params = new HashMap<>();
+        for (String param : request.queryParams()) {
+            params.put(param, request.queryParams(param));
+        }
+        return params;
     }
 
     @Override
-    protected Object processRequest(Tuple<Set<String>, String> requestParams, Response response) {
-        Set<String> reqParams = requestParams.getFirst();
-        String term = requestParams.getSecond();
+    protected Object processRequest(Map<String, String> requestParams, Response response) {
+        String term = requestParams.get("term");
         Object result;
         /* Search for actual location data. */
-        if (reqParams.contains("full")) {
+        if (requestParams.containsKey("full")) {
             result = getLocations(term);
+        } else if (requestParams.containsKey("fuzzy")) {
+            /* Search for prefix matching strings, tolerating typos. */
+            int maxEdits = Math.max(0, Math.min(MAX_FUZZY_EDITS, getIntParam(requestParams, "fuzzy")));
+            if (requestParams.containsKey("limit")) {
+                result = getLocationsByFuzzyPrefix(term, maxEdits,
+                        getIntParam(requestParams, "limit"));
+            } else {
+                result = getLocationsByFuzzyPrefix(term, maxEdits);
+            }
+        } else if (requestParams.containsKey("limit")) {
+            /* Search for the best ranked prefix matching strings. */
+            result = getLocationsByPrefix(term, getIntParam(requestParams, "limit"));
         } else {
             /* Search for prefix matching strings. */
             result = getLocationsByPrefix(term);
@@ -37,6 +61,15 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
         return result;
     }
 
+    private static int getIntParam(Map<String, String> requestParams, String param) {
+        try {
+            return Integer.parseInt(requestParams.get(param));
+        } catch (NumberFormatException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - " + param + " must be an integer.");
+            return 0;
+        }
+    }
+
     /**
      * In linear time, collect all the names of OSM locations that prefix-match the query string.
      * @param prefix Prefix string to be searched for. Could be any case, with our without
@@ -46,7 +79,48 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
      */
     public List<String> getLocationsByPrefix(String prefix) {
 
-        return SEMANTIC_STREET_GRAPH.getLocationsByPrefix(prefix);
+        return MapSnapshots.current().graph().getLocationsByPrefix(prefix);
+    }
+
+    /**
+     * Collect at most <code>limit</code> names of OSM locations that prefix-match the query
+     * string, best ranked first.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit The maximum number of names to return.
+     * @return A <code>List</code> of the full names of the best ranked locations whose cleaned
+     * name matches the cleaned <code>prefix</code>.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+
+        return MapSnapshots.current().graph().getLocationsByPrefix(prefix, limit);
+    }
+
+    /**
+     * Collect all the names of OSM locations that prefix-match the query string with at most
+     * <code>maxEdits</code> typos.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param maxEdits The maximum number of typos tolerated.
+     * @return A sorted <code>List</code> of the full names of matching locations.
+     */
+    public List<String> getLocationsByFuzzyPrefix(String prefix, int maxEdits) {
+
+        return MapSnapshots.current().graph().getLocationsByFuzzyPrefix(prefix, maxEdits);
+    }
+
+    /**
+     * Collect at most <code>limit</code> names of OSM locations that prefix-match the query
+     * string with at most <code>maxEdits</code> typos, fewest typos first.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param maxEdits The maximum number of typos tolerated.
+     * @param limit The maximum number of names to return.
+     * @return A <code>List</code> of the full names of the best matching locations.
+     */
+    public List<String> getLocationsByFuzzyPrefix(String prefix, int maxEdits, int limit) {
+
+        return MapSnapshots.current().graph().getLocationsByFuzzyPrefix(prefix, maxEdits, limit);
     }
 
     /**
@@ -63,6 +137,6 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
      */
     public List<Map<String, Object>> getLocations(String locationName) {
 
-        return SEMANTIC_STREET_GRAPH.getLocations(locationName);
+        return MapSnapshots.current().graph().getLocations(locationName);
     }
 }
@@ -0,0 +1,82 @@
+package bearmaps.proj2c.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram. Values in nanoseconds are
+ * counted in log-linear buckets: each power of two is split into SUB_BUCKETS equal
+ * buckets, so any recorded value is reported with a relative error below
+ * 1 / SUB_BUCKETS, across the whole range from nanoseconds to minutes, in a fixed
+ * amount of memory. Although built for latencies, any non-negative long can be recorded.
+ */
+public class LatencyHistogram {
+    /** Sub-buckets per power of two, as a power of two. */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /** Records one value of NANOS nanoseconds; negative values are recorded as 0. */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    /** Returns the number of values recorded. */
+    public long count() {
+        return count.sum();
+    }
+
+    /** Returns the sum of all values recorded, in nanoseconds. */
+    public long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Returns an upper bound of the Q quantile of the values recorded, in nanoseconds,
+     * or 0 if nothing was recorded.
+     */
+    public long quantileNanos(double q) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank) {
+                return bucketUpperBound(b);
+            }
+        }
+        return bucketUpperBound(NUM_BUCKETS - 1);
+    }
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each; above that, the position of the highest
+     * set bit picks the power of two and the next SUB_BUCKET_BITS bits pick the sub-bucket.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> magnitude) - SUB_BUCKETS;
+        return (magnitude + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
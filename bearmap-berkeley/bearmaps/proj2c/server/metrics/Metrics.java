@@ -0,0 +1,148 @@
+package bearmaps.proj2c.server.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The registry of all server metrics: counters, gauges and latency histograms, each
+ * identified by a name and a set of labels. Metrics are created on first use and live
+ * for the lifetime of the server. scrape renders them in the Prometheus text format.
+ * Histograms are either latencies, recorded in nanoseconds and reported in seconds,
+ * or distributions of plain counts, reported as recorded.
+ */
+public class Metrics {
+    /** Quantiles reported for every latency histogram. */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Map<String, String> HELP = new ConcurrentHashMap<>();
+    private static final Map<String, String> TYPES = new ConcurrentHashMap<>();
+    // histogram name -> divisor from recorded to reported values
+    private static final Map<String, Double> SCALES = new ConcurrentHashMap<>();
+    // metric name -> rendered labels -> metric
+    private static final Map<String, Map<String, LongAdder>> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, LongSupplier>> GAUGES = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, LatencyHistogram>> HISTOGRAMS =
+            new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter NAME with the given LABELS, given as alternating label names
+     * and values, creating it if needed.
+     */
+    public static LongAdder counter(String name, String help, String... labels) {
+        register(name, help, "counter");
+        return COUNTERS.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(renderLabels(labels), k -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge NAME with the given LABELS whose value is read from VALUE at
+     * every scrape.
+     */
+    public static void gauge(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, "gauge");
+        GAUGES.computeIfAbsent(name, k -> new ConcurrentHashMap<>()).put(renderLabels(labels), value);
+    }
+
+    /**
+     * Returns the latency histogram NAME with the given LABELS, creating it if needed.
+     * It is reported in seconds, as a summary.
+     */
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return histogram(name, help, 1e9, labels);
+    }
+
+    /**
+     * Returns the histogram NAME with the given LABELS, creating it if needed. It records
+     * plain counts, such as sizes, and is reported as recorded, as a summary.
+     */
+    public static LatencyHistogram distribution(String name, String help, String... labels) {
+        return histogram(name, help, 1.0, labels);
+    }
+
+    private static LatencyHistogram histogram(String name, String help, double scale,
+                                              String... labels) {
+        register(name, help, "summary");
+        SCALES.putIfAbsent(name, scale);
+        return HISTOGRAMS.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(renderLabels(labels), k -> new LatencyHistogram());
+    }
+
+    /** Returns all metrics in the Prometheus text exposition format. */
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Map<String, LongAdder>> metric : new TreeMap<>(COUNTERS).entrySet()) {
+            header(sb, metric.getKey());
+            for (Map.Entry<String, LongAdder> e : new TreeMap<>(metric.getValue()).entrySet()) {
+                sample(sb, metric.getKey(), e.getKey(), Long.toString(e.getValue().sum()));
+            }
+        }
+        for (Map.Entry<String, Map<String, LongSupplier>> metric : new TreeMap<>(GAUGES).entrySet()) {
+            header(sb, metric.getKey());
+            for (Map.Entry<String, LongSupplier> e : new TreeMap<>(metric.getValue()).entrySet()) {
+                sample(sb, metric.getKey(), e.getKey(), Long.toString(e.getValue().getAsLong()));
+            }
+        }
+        for (Map.Entry<String, Map<String, LatencyHistogram>> metric
+                : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            String name = metric.getKey();
+            double scale = SCALES.get(name);
+            header(sb, name);
+            for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(metric.getValue()).entrySet()) {
+                LatencyHistogram h = e.getValue();
+                for (double q : QUANTILES) {
+                    String labels = appendLabel(e.getKey(), "quantile", Double.toString(q));
+                    sample(sb, name, labels, scaled(h.quantileNanos(q), scale));
+                }
+                sample(sb, name + "_sum", e.getKey(), scaled(h.sumNanos(), scale));
+                sample(sb, name + "_count", e.getKey(), Long.toString(h.count()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void register(String name, String help, String type) {
+        HELP.putIfAbsent(name, help);
+        TYPES.putIfAbsent(name, type);
+    }
+
+    private static void header(StringBuilder sb, String name) {
+        sb.append("# HELP ").append(name).append(' ').append(HELP.get(name)).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(TYPES.get(name)).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, String value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String scaled(long value, double scale) {
+        return scale == 1.0 ? Long.toString(value) : Double.toString(value / scale);
+    }
+
+    /** Renders alternating label names and values as name="value" pairs. */
+    private static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name, value pairs.");
+        }
+        String rendered = "";
+        for (int i = 0; i < labels.length; i += 2) {
+            rendered = appendLabel(rendered, labels[i], labels[i + 1]);
+        }
+        return rendered;
+    }
+
+    private static String appendLabel(String rendered, String name, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        String label = name + "=\"" + escaped + "\"";
+        return rendered.isEmpty() ? label : rendered + "," + label;
+    }
+}
@@ -1,10 +1,6 @@
 package bearmaps.proj2c.utils;
 
-import bearmaps.proj2c.AugmentedStreetMapGraph;
-
 import java.awt.*;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * A class holding all the constant values used throughout the project
@@ -41,11 +37,16 @@ public class Constants {
 
     public static final int DEEPEST_DEPTH = 7;
 
-    public static AugmentedStreetMapGraph SEMANTIC_STREET_GRAPH;
+    /** At most this many client routes are kept; the least recently used are dropped first. */
+    public static final int MAX_ROUTES = 10000;
+
+    /** A client route that is not used for this long is dropped. */
+    public static final long ROUTE_IDLE_TIMEOUT_MILLIS = 30 * 60 * 1000;
 
     /**
-     * This is used to maintain a single List of route so that the same instance(object) is accessed
-     * from everywhere in the code. Enum is a cleaner way to achieve such a singleton pattern.
+     * The route of each client, keyed by session id (or the "token" request parameter), so
+     * concurrent users never see or modify each other's routes. Each route remembers the
+     * version of the MapSnapshot it was computed on.
      */
-    public static final List<Long> ROUTE_LIST = new LinkedList<>();
+    public static final RouteStore ROUTES = new RouteStore(MAX_ROUTES, ROUTE_IDLE_TIMEOUT_MILLIS);
 }
@@ -0,0 +1,88 @@
+package bearmaps.proj2c.utils;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys to non-negative int values, such as node ids to dense vertex
+ * numbers, stored in two primitive arrays with open addressing and linear probing. Unlike
+ * a HashMap&lt;Long, Integer&gt;, looking a key up neither boxes it nor follows a pointer
+ * per entry. The map only grows; there is no removal.
+ */
+public class LongIntMap {
+    private static final int MISSING = -1;
+
+    private long[] keys;
+    // MISSING marks an empty slot, which is why values may not be negative
+    private int[] values;
+    private int size;
+
+    /** Creates a map with room for EXPECTEDSIZE keys before it has to grow. */
+    public LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+    }
+
+    /** Returns the value of KEY, or -1 if the map has none. */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != MISSING; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return MISSING;
+    }
+
+    /** Returns true if the map has a value for KEY. */
+    public boolean containsKey(long key) {
+        return get(key) != MISSING;
+    }
+
+    /** Sets the value of KEY to VALUE, which must not be negative. */
+    public void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values must not be negative.");
+        }
+        if (2 * (size + 1) > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != MISSING) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size += 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != MISSING) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /** Spreads the bits of KEY, since OSM ids are often consecutive or share low bits. */
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,49 @@
+package bearmaps.proj2c.utils;
+
+/**
+ * Turns location names into their "cleaned" form: only ASCII letters and spaces are
+ * kept, and letters are lowercased. This gives the same result as
+ * <code>s.replaceAll("[^a-zA-Z ]", "").toLowerCase()</code>, but with a hand-written
+ * char filter instead of a regex compiled on every call, and without allocating at all
+ * when the input is already clean.
+ */
+public class NameNormalizer {
+
+    private NameNormalizer() {
+    }
+
+    /**
+     * Returns the cleaned form of S.
+     *
+     * @param s Input string.
+     * @return Cleaned string; S itself if it was already clean.
+     */
+    public static String clean(String s) {
+        int n = s.length();
+        int i = 0;
+        while (i < n && isCleanChar(s.charAt(i))) {
+            i += 1;
+        }
+        if (i == n) {
+            return s;
+        }
+
+        char[] out = new char[n];
+        s.getChars(0, i, out, 0);
+        int length = i;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                out[length++] = (char) (c + ('a' - 'A'));
+            } else if (isCleanChar(c)) {
+                out[length++] = c;
+            }
+        }
+        return new String(out, 0, length);
+    }
+
+    /** Returns true if C is kept unchanged by clean. */
+    private static boolean isCleanChar(char c) {
+        return (c >= 'a' && c <= 'z') || c == ' ';
+    }
+}
@@ -0,0 +1,127 @@
+package bearmaps.proj2c.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds the route of every client, keyed by a session id or client supplied token.
+ * Routes are stored as immutable lists that are replaced, never mutated, so a reader
+ * always sees a consistent snapshot without locking. Each route is tagged with the
+ * version of the map data its node ids refer to, and is discarded once a newer
+ * version is asked for. The store keeps at most maxRoutes routes, and a route that
+ * has not been read or written for idleTimeoutMillis is dropped.
+ */
+public class RouteStore {
+
+    private static class Entry {
+        private final List<Long> route;
+        private final long mapVersion;
+        private volatile long lastAccess;
+
+        private Entry(List<Long> route, long mapVersion, long now) {
+            this.route = route;
+            this.mapVersion = mapVersion;
+            this.lastAccess = now;
+        }
+    }
+
+    private final Map<String, Entry> routes = new ConcurrentHashMap<>();
+    private final int maxRoutes;
+    private final long idleTimeoutMillis;
+    private final LongSupplier clock;
+    private volatile long lastSweep;
+
+    public RouteStore(int maxRoutes, long idleTimeoutMillis) {
+        this(maxRoutes, idleTimeoutMillis, System::currentTimeMillis);
+    }
+
+    /** A store that reads the time in milliseconds from CLOCK instead of the system clock. */
+    public RouteStore(int maxRoutes, long idleTimeoutMillis, LongSupplier clock) {
+        this.maxRoutes = maxRoutes;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.clock = clock;
+        this.lastSweep = clock.getAsLong();
+    }
+
+    /**
+     * Returns an immutable snapshot of the route of KEY on map version MAPVERSION, which is
+     * empty if there is none.
+     */
+    public List<Long> get(String key, long mapVersion) {
+        Entry entry = routes.get(key);
+        long now = clock.getAsLong();
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        if (isIdle(entry, now) || entry.mapVersion < mapVersion) {
+            routes.remove(key, entry);
+            return Collections.emptyList();
+        }
+        if (entry.mapVersion != mapVersion) {
+            return Collections.emptyList();
+        }
+        entry.lastAccess = now;
+        return entry.route;
+    }
+
+    /**
+     * Appends ROUTE, computed on map version MAPVERSION, to the route of KEY and returns the
+     * resulting snapshot. A stored route from another map version is replaced.
+     */
+    public List<Long> append(String key, long mapVersion, List<Long> route) {
+        long now = clock.getAsLong();
+        Entry updated = routes.compute(key, (k, old) -> {
+            List<Long> combined = new ArrayList<>();
+            if (old != null && !isIdle(old, now) && old.mapVersion == mapVersion) {
+                combined.addAll(old.route);
+            }
+            combined.addAll(route);
+            return new Entry(Collections.unmodifiableList(combined), mapVersion, now);
+        });
+        evict(now);
+        return updated.route;
+    }
+
+    /** Removes the route of KEY. */
+    public void clear(String key) {
+        routes.remove(key);
+    }
+
+    /** Returns the number of routes currently stored. */
+    public int size() {
+        return routes.size();
+    }
+
+    private boolean isIdle(Entry entry, long now) {
+        return now - entry.lastAccess > idleTimeoutMillis;
+    }
+
+    /**
+     * Drops idle routes at most once per idle timeout, and the least recently used
+     * routes whenever the store holds more than maxRoutes.
+     */
+    private void evict(long now) {
+        if (now - lastSweep > idleTimeoutMillis) {
+            lastSweep = now;
+            routes.entrySet().removeIf(e -> isIdle(e.getValue(), now));
+        }
+        while (routes.size() > maxRoutes) {
+            String oldestKey = null;
+            long oldest = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> e : routes.entrySet()) {
+                if (e.getValue().lastAccess < oldest) {
+                    oldest = e.getValue().lastAccess;
+                    oldestKey = e.getKey();
+                }
+            }
+            if (oldestKey == null) {
+                return;
+            }
+            routes.remove(oldestKey);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package bearmaps.test;
+
+import bearmaps.hw4.SolverBudget;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.BatchRouter;
+import bearmaps.proj2c.GraphIndex;
+import bearmaps.proj2c.IndexedSearch;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static bearmaps.proj2c.utils.Constants.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Tests that batch routes match the routes found one at a time by Router. */
+public class TestBatchRouter {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_PAIRS = 200;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    private static double randomLon(Random r) {
+        return ROOT_ULLON + r.nextDouble() * (ROOT_LRLON - ROOT_ULLON);
+    }
+
+    private static double randomLat(Random r) {
+        return ROOT_LRLAT + r.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT);
+    }
+
+    @Test
+    public void testMatchesRouter() {
+        Random r = new Random(38);
+        double[] stlons = new double[NUM_PAIRS];
+        double[] stlats = new double[NUM_PAIRS];
+        double[] destlons = new double[NUM_PAIRS];
+        double[] destlats = new double[NUM_PAIRS];
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            stlons[i] = randomLon(r);
+            stlats[i] = randomLat(r);
+            destlons[i] = randomLon(r);
+            destlats[i] = randomLat(r);
+        }
+
+        List<Router.RouteResult> batch = BatchRouter.routes(graph, stlons, stlats,
+                destlons, destlats, new SolverBudget(60));
+        assertEquals(NUM_PAIRS, batch.size());
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            Router.RouteResult expected = Router.route(graph, stlons[i], stlats[i],
+                    destlons[i], destlats[i]);
+            assertEquals(expected.outcome(), batch.get(i).outcome());
+            assertEquals(expected.distance(), batch.get(i).distance(), 1e-9);
+            assertEquals(expected.path().get(0), batch.get(i).path().get(0));
+        }
+    }
+
+    @Test
+    public void testSearchesPooled() {
+        // a reloaded map has other vertices, so searches pooled for one are not lent for
+        // the other, and are dropped instead
+        GraphIndex index = graph.index();
+        GraphIndex reloaded = new AugmentedStreetMapGraph(OSM_DB_PATH).index();
+        IndexedSearch other = IndexedSearch.acquire(reloaded);
+        assertSame(reloaded, other.index());
+        other.close();
+        IndexedSearch first = IndexedSearch.acquire(index);
+        assertNotSame(other, first);
+        assertSame(index, first.index());
+
+        // a search is lent to one caller at a time, and reused once returned
+        IndexedSearch second = IndexedSearch.acquire(index);
+        assertNotSame(first, second);
+        first.close();
+        IndexedSearch again = IndexedSearch.acquire(index);
+        assertSame(first, again);
+        again.close();
+        second.close();
+    }
+
+    /**
+     * A budget that is cancelled as soon as the search starts, but whose flag is only read
+     * before the first expansion, so every search using it runs to the end regardless.
+     */
+    private static class CancelledLateBudget extends SolverBudget {
+        CancelledLateBudget() {
+            super(60, Long.MAX_VALUE, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public boolean allows(long expansions) {
+            boolean allowed = super.allows(expansions);
+            cancel();
+            return allowed;
+        }
+    }
+
+    @Test
+    public void testCancelAfterSolvedNotCancelled() {
+        GraphIndex index = graph.index();
+        Random r = new Random(37);
+        int solved = 0;
+        for (int i = 0; i < 20; i++) {
+            int start = r.nextInt(index.size());
+            int goal = r.nextInt(index.size());
+            SolverBudget budget = new CancelledLateBudget();
+            Router.RouteResult result = Router.route(graph, index.lon(start), index.lat(start),
+                    index.lon(goal), index.lat(goal), budget);
+            assertTrue(budget.isCancelled());
+            assertFalse(result.cancelled());
+            if (result.outcome() == SolverOutcome.SOLVED) {
+                solved += 1;
+            }
+
+            budget = new CancelledLateBudget();
+            List<Router.RouteResult> batch = BatchRouter.routes(graph,
+                    new double[]{index.lon(start)}, new double[]{index.lat(start)},
+                    new double[]{index.lon(goal)}, new double[]{index.lat(goal)}, budget);
+            assertEquals(result.outcome(), batch.get(0).outcome());
+            assertFalse(batch.get(0).cancelled());
+        }
+        assertTrue(solved > 0);
+
+        // a search the cancel did stop is still reported cancelled
+        SolverBudget cancelled = new SolverBudget(60, Long.MAX_VALUE, 1);
+        cancelled.cancel();
+        Router.RouteResult stopped = Router.route(graph, index.lon(0), index.lat(0),
+                index.lon(index.size() - 1), index.lat(index.size() - 1), cancelled);
+        assertEquals(SolverOutcome.TIMEOUT, stopped.outcome());
+        assertTrue(stopped.cancelled());
+    }
+
+    @Test
+    public void testClosestBatchMatchesSingle() {
+        Random r = new Random(380);
+        int n = 500;
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && r.nextInt(4) == 0) {
+                // repeat an earlier location, as consecutive legs of a trip do
+                int j = r.nextInt(i);
+                lons[i] = lons[j];
+                lats[i] = lats[j];
+            } else {
+                lons[i] = randomLon(r);
+                lats[i] = randomLat(r);
+            }
+        }
+        long[] ids = graph.closest(lons, lats);
+        assertEquals(n, ids.length);
+        for (int i = 0; i < n; i++) {
+            assertEquals(graph.closest(lons[i], lats[i]), ids[i]);
+        }
+        assertEquals(0, graph.closest(new double[0], new double[0]).length);
+    }
+}
@@ -0,0 +1,168 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.CompactTrieSet;
+import bearmaps.proj2c.MyTrieSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of CompactTrieSet, checked against the HashMap based MyTrieSet. */
+public class TestCompactTrieSet {
+
+    private static String randomWord(Random r) {
+        String alphabet = "abcde ";
+        int length = 1 + r.nextInt(6);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSmall() {
+        CompactTrieSet t = new CompactTrieSet(Arrays.asList("hello", "hi", "help", "zebra", "hi", ""));
+        assertEquals(4, t.size());
+        assertTrue(t.contains("hi"));
+        assertTrue(t.contains("help"));
+        assertFalse(t.contains("hel"));
+        assertFalse(t.contains("zebras"));
+        assertEquals(Arrays.asList("hello", "help", "hi"), t.keysWithPrefix("h"));
+        assertEquals(Arrays.asList("hello", "help"), t.keysWithPrefix("hel"));
+        assertEquals(Collections.emptyList(), t.keysWithPrefix("x"));
+    }
+
+    @Test
+    public void testMatchesMyTrieSet() {
+        Random r = new Random(2019);
+        List<String> words = new ArrayList<>();
+        MyTrieSet expected = new MyTrieSet();
+        for (int i = 0; i < 3000; i++) {
+            String w = randomWord(r);
+            words.add(w);
+            expected.add(w);
+        }
+        CompactTrieSet actual = new CompactTrieSet(words);
+
+        for (int i = 0; i < 3000; i++) {
+            String query = randomWord(r);
+            assertEquals(expected.contains(query), actual.contains(query));
+
+            List<String> expectedKeys = new ArrayList<>(expected.keysWithPrefix(query));
+            Collections.sort(expectedKeys);
+            assertEquals(expectedKeys, actual.keysWithPrefix(query));
+        }
+    }
+
+    @Test
+    public void testTopKeysWithPrefix() {
+        Random r = new Random(61);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            words.add(randomWord(r));
+        }
+        CompactTrieSet t = new CompactTrieSet(words, w -> w.hashCode() % 7);
+
+        for (int i = 0; i < 500; i++) {
+            String word = randomWord(r);
+            String query = word.substring(0, Math.min(word.length(), 1 + r.nextInt(2)));
+            int k = 1 + r.nextInt(20);
+            List<String> expected = new ArrayList<>(t.keysWithPrefix(query));
+            // stable sort keeps alphabetical order among equal scores
+            expected.sort((a, b) -> Integer.compare(b.hashCode() % 7, a.hashCode() % 7));
+            expected = expected.subList(0, Math.min(k, expected.size()));
+            assertEquals(expected, t.topKeysWithPrefix(query, k));
+        }
+    }
+
+    private static int editDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1),
+                            d[i - 1][j - 1] + cost);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    @Test
+    public void testKeysWithFuzzyPrefix() {
+        Random r = new Random(2020);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            words.add(randomWord(r));
+        }
+        CompactTrieSet t = new CompactTrieSet(words);
+
+        for (int i = 0; i < 300; i++) {
+            String query = randomWord(r);
+            int maxEdits = r.nextInt(3);
+            List<String> expected = new ArrayList<>();
+            for (String w : new TreeSet<>(words)) {
+                for (int end = 0; end <= w.length(); end++) {
+                    if (editDistance(query, w.substring(0, end)) <= maxEdits) {
+                        expected.add(w);
+                        break;
+                    }
+                }
+            }
+            assertEquals(expected, t.keysWithFuzzyPrefix(query, maxEdits));
+        }
+        assertEquals(t.keysWithPrefix("a"), t.keysWithFuzzyPrefix("a", 0));
+    }
+
+    /** Returns the fewest edits that turn QUERY into a prefix of W. */
+    private static int prefixEditDistance(String query, String w) {
+        int best = Integer.MAX_VALUE;
+        for (int end = 0; end <= w.length(); end++) {
+            best = Math.min(best, editDistance(query, w.substring(0, end)));
+        }
+        return best;
+    }
+
+    @Test
+    public void testTopKeysWithFuzzyPrefix() {
+        Random r = new Random(2021);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            words.add(randomWord(r));
+        }
+        CompactTrieSet t = new CompactTrieSet(words, w -> w.hashCode() % 7);
+
+        for (int i = 0; i < 300; i++) {
+            String query = randomWord(r);
+            int maxEdits = r.nextInt(3);
+            int k = 1 + r.nextInt(20);
+            List<String> expected = new ArrayList<>(t.keysWithFuzzyPrefix(query, maxEdits));
+            // stable sort keeps alphabetical order among equal edits and scores
+            expected.sort((a, b) -> {
+                int edits = Integer.compare(prefixEditDistance(query, a),
+                        prefixEditDistance(query, b));
+                return edits != 0 ? edits : Integer.compare(b.hashCode() % 7, a.hashCode() % 7);
+            });
+            expected = expected.subList(0, Math.min(k, expected.size()));
+            assertEquals(expected, t.topKeysWithFuzzyPrefix(query, maxEdits, k));
+        }
+
+        // an exact match ranks above a more popular one with a typo
+        CompactTrieSet names = new CompactTrieSet(Arrays.asList("oak", "bak"),
+                w -> w.equals("bak") ? 100 : 1);
+        assertEquals(Arrays.asList("oak", "bak"), names.topKeysWithFuzzyPrefix("oak", 1, 2));
+        assertEquals(Collections.singletonList("oak"), names.topKeysWithFuzzyPrefix("oak", 1, 1));
+    }
+}
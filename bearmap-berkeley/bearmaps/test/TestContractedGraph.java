@@ -0,0 +1,96 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.ContractedGraph;
+import bearmaps.proj2c.GraphIndex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tests that searches over a ContractedGraph unpack to shortest paths of the full graph. */
+public class TestContractedGraph {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_PAIRS = 300;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    /** Returns true if A and B join the same nodes with the same weight and name. */
+    private static boolean sameEdge(WeightedEdge<Long> a, WeightedEdge<Long> b) {
+        return a.from().equals(b.from()) && a.to().equals(b.to()) && a.weight() == b.weight()
+                && Objects.equals(a.getName(), b.getName());
+    }
+
+    /** Checks the contracted search from START to GOAL against a search of the full graph. */
+    private static void checkRoute(long start, long goal) {
+        ContractedGraph contracted = graph.contracted();
+        AStarSolver<Long> expected = new AStarSolver<>(graph, start, goal, 60);
+        AStarSolver<Long> actual = new AStarSolver<>(contracted.query(start, goal), start, goal, 60);
+        assertEquals(expected.outcome(), actual.outcome());
+        if (expected.outcome() != SolverOutcome.SOLVED) {
+            return;
+        }
+        List<WeightedEdge<Long>> edges = contracted.unpack(actual.solutionEdges());
+        long at = start;
+        double length = 0;
+        for (WeightedEdge<Long> e : edges) {
+            assertEquals(at, (long) e.from());
+            assertTrue(graph.neighbors(at).stream().anyMatch(n -> sameEdge(n, e)));
+            length += e.weight();
+            at = e.to();
+        }
+        assertEquals(goal, at);
+        assertEquals(expected.solutionWeight(), length, 1e-9);
+    }
+
+    @Test
+    public void testFewerVertices() {
+        ContractedGraph contracted = graph.contracted();
+        assertTrue(contracted.coreCount() < graph.index().size());
+    }
+
+    @Test
+    public void testRandomPairs() {
+        GraphIndex index = graph.index();
+        Random r = new Random(48);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            checkRoute(index.id(r.nextInt(index.size())), index.id(r.nextInt(index.size())));
+        }
+    }
+
+    @Test
+    public void testNearbyPairs() {
+        // pairs a few edges apart often lie on the same chain, in either direction
+        GraphIndex index = graph.index();
+        Random r = new Random(480);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            int start = r.nextInt(index.size());
+            int goal = start;
+            for (int step = r.nextInt(4); step >= 0; step--) {
+                int degree = index.firstEdge(goal + 1) - index.firstEdge(goal);
+                if (degree == 0) {
+                    break;
+                }
+                goal = index.edgeTo(index.firstEdge(goal) + r.nextInt(degree));
+            }
+            checkRoute(index.id(start), index.id(goal));
+        }
+    }
+}
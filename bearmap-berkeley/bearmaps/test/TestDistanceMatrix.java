@@ -0,0 +1,66 @@
+package bearmaps.test;
+
+import bearmaps.hw4.SolverBudget;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.BatchRouter;
+import bearmaps.proj2c.DistanceMatrix;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static bearmaps.proj2c.utils.Constants.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests distance matrices against distances of routes found one at a time by Router. */
+public class TestDistanceMatrix {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_POINTS = 20;
+    private static AugmentedStreetMapGraph graph;
+    private static double[] lons;
+    private static double[] lats;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        Random r = new Random(39);
+        lons = new double[NUM_POINTS];
+        lats = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            lons[i] = ROOT_ULLON + r.nextDouble() * (ROOT_LRLON - ROOT_ULLON);
+            lats[i] = ROOT_LRLAT + r.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT);
+        }
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesRouter() {
+        DistanceMatrix matrix = BatchRouter.distanceMatrix(graph, lons, lats, lons, lats,
+                new SolverBudget(60));
+        assertTrue(matrix.complete());
+        for (int i = 0; i < NUM_POINTS; i++) {
+            assertEquals(0.0, matrix.distance(i, i), 0.0);
+            for (int j = 0; j < NUM_POINTS; j++) {
+                Router.RouteResult route = Router.route(graph, lons[i], lats[i], lons[j], lats[j]);
+                double expected = route.outcome() == SolverOutcome.SOLVED
+                        ? route.distance() : Double.POSITIVE_INFINITY;
+                assertEquals(expected, matrix.distance(i, j), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testExhaustedBudget() {
+        SolverBudget budget = new SolverBudget(60, 1, 1);
+        DistanceMatrix matrix = BatchRouter.distanceMatrix(graph, lons, lats, lons, lats, budget);
+        assertFalse(matrix.complete());
+    }
+}
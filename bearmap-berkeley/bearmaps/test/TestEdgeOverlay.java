@@ -0,0 +1,240 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.SolverBudget;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.EdgeUpdate;
+import bearmaps.proj2c.GraphIndex;
+import bearmaps.proj2c.IndexedSearch;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that edge updates are seen by every kind of route search, and that compacting
+ * them away does not change any route.
+ */
+public class TestEdgeOverlay {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_PAIRS = 50;
+    private static AugmentedStreetMapGraph graph;
+
+    @Before
+    public void setUp() throws Exception {
+        if (graph == null) {
+            graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        }
+    }
+
+    /** Returns true if A and B join the same nodes with the same weight and name. */
+    private static boolean sameEdge(WeightedEdge<Long> a, WeightedEdge<Long> b) {
+        return a.from().equals(b.from()) && a.to().equals(b.to()) && a.weight() == b.weight()
+                && Objects.equals(a.getName(), b.getName());
+    }
+
+    /**
+     * Returns the length of the shortest path from START to GOAL in G, after checking that
+     * searches of the full graph, the contracted graph and the index all agree on it.
+     */
+    private static double routeWeight(AugmentedStreetMapGraph g, long start, long goal) {
+        AStarSolver<Long> full = new AStarSolver<>(g, start, goal, 60);
+        AStarSolver<Long> contracted = new AStarSolver<>(g.contracted().query(start, goal),
+                start, goal, 60);
+        GraphIndex index = g.index();
+        try (IndexedSearch search = IndexedSearch.acquire(index)) {
+            SolverOutcome indexed = search.aStar(index.indexOf(start), index.indexOf(goal),
+                    new SolverBudget(60, Long.MAX_VALUE, SolverBudget.DEFAULT_CHECK_INTERVAL));
+            assertEquals(full.outcome(), contracted.outcome());
+            assertEquals(full.outcome(), indexed);
+            if (full.outcome() != SolverOutcome.SOLVED) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double length = 0;
+            for (WeightedEdge<Long> e : g.contracted().unpack(contracted.solutionEdges())) {
+                assertTrue(g.neighbors(e.from()).stream().anyMatch(n -> sameEdge(n, e)));
+                length += e.weight();
+            }
+            assertEquals(full.solutionWeight(), length, 1e-9);
+            assertEquals(full.solutionWeight(), search.solutionWeight(), 1e-9);
+            return full.solutionWeight();
+        }
+    }
+
+    /** Returns the edges of a shortest path from START to GOAL in the graph as parsed. */
+    private static List<WeightedEdge<Long>> routeEdges(long start, long goal) {
+        return new AStarSolver<>(graph, start, goal, 60).solutionEdges();
+    }
+
+    /** Returns true if PATH goes straight from node FROM to node TO somewhere. */
+    private static boolean uses(List<Long> path, long from, long to) {
+        for (int i = 1; i < path.size(); i++) {
+            if (path.get(i - 1) == from && path.get(i) == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testClosedEdgeAvoided() {
+        GraphIndex index = graph.index();
+        Random r = new Random(50);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            long start = index.id(r.nextInt(index.size()));
+            long goal = index.id(r.nextInt(index.size()));
+            List<WeightedEdge<Long>> edges = routeEdges(start, goal);
+            if (edges.isEmpty()) {
+                continue;
+            }
+            WeightedEdge<Long> closed = edges.get(edges.size() / 2);
+            AugmentedStreetMapGraph updated = graph.withUpdates(
+                    Collections.singletonList(EdgeUpdate.close(closed.from(), closed.to())));
+            double before = routeWeight(graph, start, goal);
+            double after = routeWeight(updated, start, goal);
+            assertTrue(after >= before - 1e-9);
+            List<Long> path = new AStarSolver<>(updated, start, goal, 60).solution();
+            assertFalse(uses(path, closed.from(), closed.to()));
+            assertFalse(updated.neighbors(closed.from()).stream()
+                    .anyMatch(e -> e.to().equals(closed.to())));
+        }
+    }
+
+    @Test
+    public void testWeightChange() {
+        GraphIndex index = graph.index();
+        Random r = new Random(500);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            long start = index.id(r.nextInt(index.size()));
+            long goal = index.id(r.nextInt(index.size()));
+            List<WeightedEdge<Long>> edges = routeEdges(start, goal);
+            if (edges.isEmpty()) {
+                continue;
+            }
+            WeightedEdge<Long> slow = edges.get(edges.size() / 2);
+            double before = routeWeight(graph, start, goal);
+            AugmentedStreetMapGraph updated = graph.withUpdates(Collections.singletonList(
+                    EdgeUpdate.weight(slow.from(), slow.to(), slow.weight() + 1)));
+            double after = routeWeight(updated, start, goal);
+            assertTrue(after >= before - 1e-9);
+            assertTrue(after <= before + 1 + 1e-9);
+            assertEquals(slow.weight() + 1,
+                    updated.getWeightedEdge(slow.from(), slow.to()).weight(), 0.0);
+        }
+        // the graph the updates were applied to is unchanged
+        assertTrue(graph.index().overlay().isEmpty());
+    }
+
+    @Test
+    public void testCompactedSameRoutes() {
+        GraphIndex index = graph.index();
+        Random r = new Random(5000);
+        List<EdgeUpdate> updates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int e = r.nextInt(index.edgeCount());
+            long from = index.id(index.edgeFrom(e));
+            long to = index.id(index.edgeTo(e));
+            updates.add(r.nextBoolean() ? EdgeUpdate.close(from, to)
+                    : EdgeUpdate.weight(from, to, index.edgeWeight(e) * 3));
+        }
+        AugmentedStreetMapGraph updated = graph.withUpdates(updates);
+        AugmentedStreetMapGraph compacted = updated.compacted();
+        assertTrue(compacted.index().overlay().isEmpty());
+        assertTrue(compacted.index().sharesVerticesWith(index));
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            long start = index.id(r.nextInt(index.size()));
+            long goal = index.id(r.nextInt(index.size()));
+            assertEquals(routeWeight(updated, start, goal), routeWeight(compacted, start, goal),
+                    1e-9);
+        }
+
+        // a closed edge can be opened again after compaction
+        EdgeUpdate closure = null;
+        for (EdgeUpdate update : updates) {
+            if (update.closes()) {
+                closure = update;
+            }
+        }
+        AugmentedStreetMapGraph reopened = compacted.withUpdates(Collections.singletonList(
+                EdgeUpdate.weight(closure.from(), closure.to(), 10)));
+        final long to = closure.to();
+        assertTrue(reopened.neighbors(closure.from()).stream()
+                .anyMatch(e -> e.to() == to && e.weight() == 10));
+    }
+
+    @Test
+    public void testLoweredWeightStillShortest() {
+        // raise the weights of many edges, then lower some of them again, part of the way
+        // back to their lengths
+        GraphIndex index = graph.index();
+        Random r = new Random(50000);
+        List<EdgeUpdate> raised = new ArrayList<>();
+        List<EdgeUpdate> lowered = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int e = r.nextInt(index.edgeCount());
+            long from = index.id(index.edgeFrom(e));
+            long to = index.id(index.edgeTo(e));
+            double length = index.edgeLength(e);
+            raised.add(EdgeUpdate.weight(from, to, length * 5));
+            if (i % 2 == 0) {
+                lowered.add(EdgeUpdate.weight(from, to, length * 1.5));
+            }
+        }
+        AugmentedStreetMapGraph updated = graph.withUpdates(raised).withUpdates(lowered);
+        IndexedSearch dijkstra = new IndexedSearch(updated.index());
+        SolverBudget budget = new SolverBudget(60, Long.MAX_VALUE,
+                SolverBudget.DEFAULT_CHECK_INTERVAL);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            int start = r.nextInt(index.size());
+            int goal = r.nextInt(index.size());
+            dijkstra.dijkstra(start, new int[]{goal}, budget);
+            assertEquals(dijkstra.distTo(goal), routeWeight(updated, index.id(start),
+                    index.id(goal)), 1e-9);
+        }
+    }
+
+    @Test
+    public void testWeightBelowLengthRejected() {
+        GraphIndex index = graph.index();
+        int e = 0;
+        while (index.edgeLength(e) == 0) {
+            e += 1;
+        }
+        long from = index.id(index.edgeFrom(e));
+        long to = index.id(index.edgeTo(e));
+        try {
+            graph.withUpdates(Collections.singletonList(
+                    EdgeUpdate.weight(from, to, index.edgeLength(e) / 2)));
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(graph.index().overlay().isEmpty());
+        }
+    }
+
+    @Test
+    public void testUnknownEdgeRejected() {
+        GraphIndex index = graph.index();
+        long from = index.id(index.edgeFrom(0));
+        List<EdgeUpdate> updates = new ArrayList<>();
+        updates.add(EdgeUpdate.close(from, index.id(index.edgeTo(0))));
+        updates.add(EdgeUpdate.close(from, from));
+        try {
+            graph.withUpdates(updates);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // none of the batch is applied, and the graph is unchanged
+            assertTrue(graph.index().overlay().isEmpty());
+        }
+    }
+}
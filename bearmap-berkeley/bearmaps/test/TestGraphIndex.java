@@ -0,0 +1,101 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.Node;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.GraphIndex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests that numbering the vertices of a GraphIndex along a Hilbert curve keeps the graph. */
+public class TestGraphIndex {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+    private static ParsedGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new ParsedGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    /** The graph as parsed, with its nodes in the order an index is given them. */
+    private static class ParsedGraph extends StreetMapGraph {
+        ParsedGraph(String filename) {
+            super(filename);
+        }
+
+        List<Node> nodes() {
+            return getNodes();
+        }
+    }
+
+    /** Returns the edges out of vertex V of INDEX, as from,to,weight,name strings. */
+    private static List<String> edges(GraphIndex index, int v) {
+        List<String> edges = new ArrayList<>();
+        for (int e = index.firstEdge(v); e < index.firstEdge(v + 1); e++) {
+            WeightedEdge<Long> edge = index.weightedEdge(e);
+            edges.add(edge.from() + "," + edge.to() + "," + edge.weight() + ","
+                    + Objects.toString(edge.getName()));
+        }
+        return edges;
+    }
+
+    @Test
+    public void testHilbertOrderIsPermutation() {
+        List<Node> nodes = graph.nodes();
+        GraphIndex input = new GraphIndex(graph, nodes, GraphIndex.VertexOrder.INPUT);
+        GraphIndex hilbert = new GraphIndex(graph, nodes, GraphIndex.VertexOrder.HILBERT);
+        assertEquals(nodes.size(), input.size());
+        assertEquals(input.size(), hilbert.size());
+        assertEquals(input.edgeCount(), hilbert.edgeCount());
+
+        Set<Long> seen = new HashSet<>();
+        for (int v = 0; v < hilbert.size(); v++) {
+            long id = hilbert.id(v);
+            assertTrue(seen.add(id));
+            int u = input.indexOf(id);
+            assertEquals(nodes.get(u).id(), id);
+            assertEquals(v, hilbert.indexOf(id));
+            assertEquals(input.lon(u), hilbert.lon(v), 0.0);
+            assertEquals(input.lat(u), hilbert.lat(v), 0.0);
+            assertEquals(edges(input, u), edges(hilbert, v));
+        }
+    }
+
+    @Test
+    public void testHilbertKeyIsBijection() {
+        // the cells of a square in the corner of the curve take its first distances, and
+        // consecutive distances belong to neighboring cells
+        int side = 64;
+        int[] xOf = new int[side * side];
+        int[] yOf = new int[side * side];
+        boolean[] taken = new boolean[side * side];
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < side; y++) {
+                long d = GraphIndex.hilbertKey(x, y);
+                assertTrue(d >= 0 && d < side * side);
+                assertFalse(taken[(int) d]);
+                taken[(int) d] = true;
+                xOf[(int) d] = x;
+                yOf[(int) d] = y;
+            }
+        }
+        for (int d = 1; d < side * side; d++) {
+            assertEquals(1, Math.abs(xOf[d] - xOf[d - 1]) + Math.abs(yOf[d] - yOf[d - 1]));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.GridPointSet;
+import bearmaps.proj2ab.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static bearmaps.proj2c.utils.Constants.*;
+import static org.junit.Assert.assertEquals;
+
+/** Randomized tests of GridPointSet against a brute force nearest search. */
+public class TestGridPointSet {
+    private static final int NUM_POINTS = 5000;
+    private static final int NUM_QUERIES = 2000;
+
+    private static List<Point> randomPoints(Random r, int n) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            points.add(randomPoint(r));
+        }
+        return points;
+    }
+
+    /** Returns a point in a box slightly larger than the root tile, so some fall outside. */
+    private static Point randomPoint(Random r) {
+        double lonSpan = ROOT_LRLON - ROOT_ULLON;
+        double latSpan = ROOT_ULLAT - ROOT_LRLAT;
+        double lon = ROOT_ULLON - 0.1 * lonSpan + r.nextDouble() * 1.2 * lonSpan;
+        double lat = ROOT_LRLAT - 0.1 * latSpan + r.nextDouble() * 1.2 * latSpan;
+        return new Point(lon, lat);
+    }
+
+    private static Point naiveNearest(List<Point> points, Point goal) {
+        Point best = points.get(0);
+        for (Point p : points) {
+            if (Point.distance(p, goal) < Point.distance(best, goal)) {
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void testNearestMatchesNaive() {
+        Random r = new Random(295);
+        List<Point> points = randomPoints(r, NUM_POINTS);
+        GridPointSet grid = new GridPointSet(points, ROOT_ULLON, ROOT_LRLAT, ROOT_LRLON, ROOT_ULLAT);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Point goal = randomPoint(r);
+            Point expected = naiveNearest(points, goal);
+            Point actual = grid.nearest(goal.getX(), goal.getY());
+            assertEquals(Point.distance(expected, goal), Point.distance(actual, goal), 1e-12);
+        }
+    }
+
+    @Test
+    public void testSparseGrid() {
+        Random r = new Random(61);
+        List<Point> points = randomPoints(r, 3);
+        GridPointSet grid = new GridPointSet(points, ROOT_ULLON, ROOT_LRLAT, ROOT_LRLON, ROOT_ULLAT,
+                64, 64);
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Point goal = randomPoint(r);
+            assertEquals(naiveNearest(points, goal), grid.nearest(goal.getX(), goal.getY()));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bearmaps.test;
+
+import bearmaps.hw4.SolverBudget;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Isochrone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tests isochrones against a plain Dijkstra search over the graph's neighbors. */
+public class TestIsochrone {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final double LON = -122.2592;
+    private static final double LAT = 37.8700;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    /** Returns the distance to every node within MAXDISTANCE of SOURCE. */
+    private static Map<Long, Double> naiveWithin(long source, double maxDistance) {
+        Map<Long, Double> dist = new HashMap<>();
+        PriorityQueue<Map.Entry<Long, Double>> pq =
+                new PriorityQueue<>((a, b) -> Double.compare(a.getValue(), b.getValue()));
+        dist.put(source, 0.0);
+        pq.add(new HashMap.SimpleEntry<>(source, 0.0));
+        while (!pq.isEmpty()) {
+            Map.Entry<Long, Double> entry = pq.poll();
+            if (entry.getValue() > dist.get(entry.getKey())) {
+                continue;
+            }
+            for (WeightedEdge<Long> e : graph.neighbors(entry.getKey())) {
+                double d = entry.getValue() + e.weight();
+                if (d <= maxDistance && d < dist.getOrDefault(e.to(), Double.POSITIVE_INFINITY)) {
+                    dist.put(e.to(), d);
+                    pq.add(new HashMap.SimpleEntry<>(e.to(), d));
+                }
+            }
+        }
+        return dist;
+    }
+
+    @Test
+    public void testMatchesNaive() {
+        for (double maxDistance : new double[]{0, 0.2, 0.5, 1.5}) {
+            Isochrone isochrone = Isochrone.compute(graph, LON, LAT, maxDistance, 32,
+                    new SolverBudget(60));
+            Map<Long, Double> expected = naiveWithin(graph.closest(LON, LAT), maxDistance);
+            assertTrue(isochrone.complete());
+            assertEquals(expected.size(), isochrone.nodes().length);
+            double last = 0;
+            for (int i = 0; i < isochrone.nodes().length; i++) {
+                long id = isochrone.nodes()[i];
+                assertEquals(expected.get(id), isochrone.distances()[i], 1e-9);
+                assertTrue(isochrone.distances()[i] >= last);
+                last = isochrone.distances()[i];
+                assertTrue(isCovered(isochrone, graph.lon(id), graph.lat(id)));
+            }
+        }
+    }
+
+    private static boolean isCovered(Isochrone isochrone, double lon, double lat) {
+        double width = isochrone.lrlon() - isochrone.ullon();
+        double height = isochrone.ullat() - isochrone.lrlat();
+        int col = (int) ((lon - isochrone.ullon()) / width * isochrone.cols());
+        int row = (int) ((isochrone.ullat() - lat) / height * isochrone.rows());
+        col = Math.min(isochrone.cols() - 1, col);
+        row = Math.min(isochrone.rows() - 1, row);
+        return isochrone.covered(row, col);
+    }
+}
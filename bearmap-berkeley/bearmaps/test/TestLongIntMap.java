@@ -0,0 +1,50 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.utils.LongIntMap;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/** Tests LongIntMap against a HashMap, including the growth of its tables. */
+public class TestLongIntMap {
+
+    @Test
+    public void testMatchesHashMap() {
+        Random r = new Random(44);
+        LongIntMap map = new LongIntMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // a mix of consecutive ids, as OSM has, and arbitrary ones
+            long key = i % 2 == 0 ? 5000000000L + i : r.nextLong();
+            int value = r.nextInt(Integer.MAX_VALUE);
+            map.put(key, value);
+            expected.put(key, value);
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            long key = r.nextLong();
+            assertEquals(expected.getOrDefault(key, -1).intValue(), map.get(key));
+        }
+    }
+
+    @Test
+    public void testOverwriteAndMissing() {
+        LongIntMap map = new LongIntMap(1);
+        assertEquals(-1, map.get(0));
+        map.put(0, 3);
+        map.put(-7, 0);
+        map.put(0, 5);
+        assertEquals(2, map.size());
+        assertEquals(5, map.get(0));
+        assertEquals(0, map.get(-7));
+        assertFalse(map.containsKey(7));
+    }
+}
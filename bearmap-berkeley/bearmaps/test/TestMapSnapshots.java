@@ -0,0 +1,96 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.EdgeUpdate;
+import bearmaps.proj2c.GraphIndex;
+import bearmaps.proj2c.MapSnapshot;
+import bearmaps.proj2c.MapSnapshots;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.utils.RouteStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Tests how MapSnapshots publishes and versions snapshots. */
+public class TestMapSnapshots {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+
+    @Before
+    public void setUp() {
+        MapSnapshots.load(OSM_DB_PATH, AugmentedStreetMapGraph.PointSetType.KD_TREE);
+    }
+
+    @Test
+    public void testReloadKeepsInFlightSnapshot() throws Exception {
+        MapSnapshot before = MapSnapshots.current();
+        GraphIndex index = before.graph().index();
+        MapSnapshots.applyUpdates(Collections.singletonList(
+                EdgeUpdate.close(index.id(index.edgeFrom(0)), index.id(index.edgeTo(0)))));
+
+        // a request that read the snapshot before the reload, and finishes after it
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch reloaded = new CountDownLatch(1);
+        AtomicReference<MapSnapshot> seen = new AtomicReference<>();
+        AtomicReference<List<Long>> route = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            MapSnapshot snapshot = MapSnapshots.current();
+            started.countDown();
+            try {
+                reloaded.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            seen.set(snapshot);
+            route.set(Router.shortestPath(snapshot.graph(), -122.25, 37.87, -122.26, 37.86));
+        });
+        reader.start();
+        started.await();
+
+        MapSnapshot after = MapSnapshots.reloadAsync().join();
+        reloaded.countDown();
+        reader.join();
+        assertSame(after, MapSnapshots.current());
+        assertTrue(after.version() > before.version());
+        assertEquals(0, after.generation());
+        assertTrue(after.graph().index().overlay().isEmpty());
+        assertNotSame(after.graph(), seen.get().graph());
+        assertEquals(before.version(), seen.get().version());
+        assertEquals(1, seen.get().generation());
+        assertFalse(route.get().isEmpty());
+    }
+
+    @Test
+    public void testUpdatesKeepMapVersion() {
+        MapSnapshot loaded = MapSnapshots.current();
+        assertEquals(0, loaded.generation());
+        RouteStore routes = new RouteStore(10, 60_000);
+        List<Long> route = Arrays.asList(1L, 2L, 3L);
+        routes.append("client", loaded.version(), route);
+
+        GraphIndex index = loaded.graph().index();
+        long from = index.id(index.edgeFrom(0));
+        long to = index.id(index.edgeTo(0));
+        MapSnapshot updated = MapSnapshots.applyUpdates(
+                Collections.singletonList(EdgeUpdate.close(from, to)));
+        assertEquals(loaded.version(), updated.version());
+        assertEquals(1, updated.generation());
+        assertEquals(route, routes.get("client", MapSnapshots.current().version()));
+
+        MapSnapshot compacted = MapSnapshots.compactAsync().join();
+        assertEquals(loaded.version(), compacted.version());
+        assertEquals(2, compacted.generation());
+        assertTrue(compacted.graph().index().overlay().isEmpty());
+        assertEquals(route, routes.get("client", MapSnapshots.current().version()));
+    }
+}
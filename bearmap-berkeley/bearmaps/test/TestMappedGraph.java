@@ -0,0 +1,83 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.GraphIndex;
+import bearmaps.proj2c.MappedGraph;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static bearmaps.proj2c.utils.Constants.*;
+import static org.junit.Assert.assertEquals;
+
+/** Tests that a MappedGraph written from a graph reads back, and searches, the same. */
+public class TestMappedGraph {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_PAIRS = 50;
+    private static AugmentedStreetMapGraph graph;
+    private Path file;
+    private MappedGraph mapped;
+
+    @Before
+    public void setUp() throws Exception {
+        if (graph == null) {
+            graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        }
+        file = Files.createTempFile("bearmaps", ".graph");
+        MappedGraph.write(graph.index(), file);
+        mapped = MappedGraph.open(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testSameGraph() {
+        GraphIndex index = graph.index();
+        assertEquals(index.size(), mapped.size());
+        assertEquals(index.edgeCount(), mapped.edgeCount());
+        for (int v = 0; v < index.size(); v++) {
+            long id = index.id(v);
+            assertEquals(v, mapped.indexOf(id));
+            assertEquals(graph.lon(id), mapped.lon(id), 0.0);
+            assertEquals(graph.lat(id), mapped.lat(id), 0.0);
+            List<WeightedEdge<Long>> expected = graph.neighbors(id);
+            List<WeightedEdge<Long>> actual = mapped.neighbors(id);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).to(), actual.get(i).to());
+                assertEquals(expected.get(i).weight(), actual.get(i).weight(), 0.0);
+            }
+        }
+        assertEquals(-1, mapped.indexOf(-1));
+        long id = index.id(0);
+        assertEquals(StreetMapGraph.distance(0, index.lon(0), 0, index.lat(0)),
+                mapped.estimatedDistanceToGoal(-1L, id), 0.0);
+    }
+
+    @Test
+    public void testSameRoutes() {
+        Random r = new Random(45);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            long start = graph.closest(ROOT_ULLON + r.nextDouble() * (ROOT_LRLON - ROOT_ULLON),
+                    ROOT_LRLAT + r.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT));
+            long end = graph.closest(ROOT_ULLON + r.nextDouble() * (ROOT_LRLON - ROOT_ULLON),
+                    ROOT_LRLAT + r.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT));
+            AStarSolver<Long> expected = new AStarSolver<>(graph, start, end, 60);
+            AStarSolver<Long> actual = new AStarSolver<>(mapped, start, end, 60);
+            assertEquals(expected.outcome(), actual.outcome());
+            assertEquals(expected.solution(), actual.solution());
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.Node;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.utils.NameNormalizer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Tests that NameNormalizer cleans names exactly as the regex it replaces did. */
+public class TestNameNormalizer {
+    private static final String OSM_DB_PATH = "data/proj2c_xml/berkeley-2019.osm.xml";
+
+    /** The graph as parsed, to read the names of its nodes. */
+    private static class ParsedGraph extends StreetMapGraph {
+        ParsedGraph(String filename) {
+            super(filename);
+        }
+
+        List<Node> nodes() {
+            return getNodes();
+        }
+    }
+
+    private static String regexClean(String s) {
+        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+    }
+
+    @Test
+    public void testMapNames() {
+        int named = 0;
+        for (Node node : new ParsedGraph(OSM_DB_PATH).nodes()) {
+            if (node.name() != null) {
+                assertEquals(regexClean(node.name()), NameNormalizer.clean(node.name()));
+                named += 1;
+            }
+        }
+        assertTrue(named > 0);
+    }
+
+    @Test
+    public void testEdgeCases() {
+        List<String> inputs = Arrays.asList("", " ", "   ", "a", "Z", "7", "!", "abc def",
+                "ABC DEF", "Caf\u00e9 Strada", "Peet's Coffee & Tea", "7-Eleven", "\tTab\nNewline",
+                "\u00dcn\u00efc\u00f6d\u00e9", "stra\u00dfe", "\u65e5\u672c", "a\u0000b", "@[`{", "AZaz");
+        for (String s : inputs) {
+            assertEquals(s, regexClean(s), NameNormalizer.clean(s));
+        }
+        String clean = "already clean";
+        assertSame(clean, NameNormalizer.clean(clean));
+    }
+
+    @Test
+    public void testRandomStrings() {
+        // every char class at the borders of the kept ranges, plus some beyond ASCII
+        String alphabet = "@AMZ[`amz{ 09_-'.\u00c9\u00e9\u0130\u0131\u212a";
+        Random r = new Random(29);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int length = r.nextInt(12); length > 0; length--) {
+                sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+            }
+            String s = sb.toString();
+            assertEquals(s, regexClean(s), NameNormalizer.clean(s));
+        }
+    }
+}
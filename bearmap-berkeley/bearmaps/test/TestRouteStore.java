@@ -0,0 +1,93 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.utils.RouteStore;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/** Tests that RouteStore evicts idle and least recently used routes, and stale versions. */
+public class TestRouteStore {
+    private static final long IDLE = 1000;
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    private static List<Long> route(long... ids) {
+        Long[] boxed = new Long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            boxed[i] = ids[i];
+        }
+        return Arrays.asList(boxed);
+    }
+
+    @Test
+    public void testAppend() {
+        RouteStore store = new RouteStore(10, IDLE, now::get);
+        assertEquals(route(1, 2), store.append("a", 1, route(1, 2)));
+        assertEquals(route(1, 2, 3), store.append("a", 1, route(3)));
+        assertEquals(route(1, 2, 3), store.get("a", 1));
+        assertEquals(Collections.emptyList(), store.get("b", 1));
+        store.clear("a");
+        assertEquals(Collections.emptyList(), store.get("a", 1));
+    }
+
+    @Test
+    public void testIdleEviction() {
+        RouteStore store = new RouteStore(10, IDLE, now::get);
+        store.append("a", 1, route(1));
+        store.append("b", 1, route(2));
+
+        // reading a route keeps it alive
+        now.set(IDLE);
+        assertEquals(route(1), store.get("a", 1));
+        now.set(IDLE + 1);
+        assertEquals(Collections.emptyList(), store.get("b", 1));
+        assertEquals(route(1), store.get("a", 1));
+
+        // an idle route is not appended to, and idle routes are swept on the next write
+        store.append("c", 1, route(3));
+        now.set(3 * IDLE + 2);
+        assertEquals(route(4), store.append("a", 1, route(4)));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        RouteStore store = new RouteStore(3, IDLE, now::get);
+        for (String key : new String[]{"a", "b", "c"}) {
+            store.append(key, 1, route(1));
+            now.incrementAndGet();
+        }
+        store.get("a", 1);
+        now.incrementAndGet();
+        store.append("d", 1, route(1));
+        assertEquals(3, store.size());
+        assertEquals(Collections.emptyList(), store.get("b", 1));
+        assertEquals(route(1), store.get("a", 1));
+        assertEquals(route(1), store.get("c", 1));
+        assertEquals(route(1), store.get("d", 1));
+    }
+
+    @Test
+    public void testVersionInvalidation() {
+        RouteStore store = new RouteStore(10, IDLE, now::get);
+        store.append("a", 2, route(1, 2));
+
+        // an older version does not see the route, but does not drop it either
+        assertEquals(Collections.emptyList(), store.get("a", 1));
+        assertEquals(route(1, 2), store.get("a", 2));
+
+        // a newer version drops it
+        assertEquals(Collections.emptyList(), store.get("a", 3));
+        assertEquals(0, store.size());
+        assertEquals(Collections.emptyList(), store.get("a", 2));
+
+        // appending on another version starts over
+        store.append("b", 2, route(1));
+        assertEquals(route(5), store.append("b", 3, route(5)));
+    }
+}
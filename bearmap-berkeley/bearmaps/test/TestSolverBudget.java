@@ -0,0 +1,58 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.SolverBudget;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.lectureexample.WeightedDirectedGraph;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tests that AStarSolver stops when its SolverBudget runs out or is cancelled. */
+public class TestSolverBudget {
+    private static final int LENGTH = 1000;
+
+    /** A path 0 -> 1 -> ... -> LENGTH - 1, with one edge back out of the last vertex. */
+    private static WeightedDirectedGraph chain() {
+        WeightedDirectedGraph g = new WeightedDirectedGraph(LENGTH);
+        for (int i = 0; i + 1 < LENGTH; i++) {
+            g.addEdge(i, i + 1, 1);
+        }
+        g.addEdge(LENGTH - 1, LENGTH - 2, 1);
+        return g;
+    }
+
+    @Test
+    public void testUnlimitedBudgetSolves() {
+        AStarSolver<Integer> solver = new AStarSolver<>(chain(), 0, LENGTH - 1,
+                new SolverBudget(60));
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+        assertEquals(LENGTH - 1, solver.solutionWeight(), 1e-9);
+    }
+
+    @Test
+    public void testMaxExpansions() {
+        AStarSolver<Integer> solver = new AStarSolver<>(chain(), 0, LENGTH - 1,
+                new SolverBudget(60, 10, 4));
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+        assertEquals(10, solver.numStatesExplored());
+    }
+
+    @Test
+    public void testCancelled() {
+        SolverBudget budget = new SolverBudget(60);
+        budget.cancel();
+        AStarSolver<Integer> solver = new AStarSolver<>(chain(), 0, LENGTH - 1, budget);
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+        assertEquals(0, solver.numStatesExplored());
+        assertTrue(budget.isCancelled());
+    }
+
+    @Test
+    public void testTimeout() {
+        AStarSolver<Integer> solver = new AStarSolver<>(chain(), 0, LENGTH - 1,
+                new SolverBudget(0));
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+    }
+}
@@ -174,16 +174,27 @@ $(function() {
             computed.lrlon > lrlon_bound || computed.lrlat < lrlat_bound;
     }
 
+    /* Renders structured directions: each step is [maneuver, way, miles, start node]. */
+    function directionsHtml(data) {
+        var html = '';
+        for (var i = 0; i < data.steps.length; i++) {
+            const step = data.steps[i];
+            html += (i + 1) + '. ' + data.maneuvers[step[0]] + ' on ' + data.ways[step[1]] +
+                ' and continue for ' + step[2].toFixed(3) + ' miles. <br>';
+        }
+        return html;
+    }
+
     function updateRoute() {
         $.get({
             async: true,
             url: route_server,
-            data: route_params,
+            data: $.extend({directions: 'structured'}, route_params),
             success: function(data) {
                 data = JSON.parse(data);
                 updateImg();
                 if (data.directions_success) {
-                    $directionsText.html(data.directions);
+                    $directionsText.html(directionsHtml(data));
                 } else {
                     $directionsText.html('No routing directions to display.');
                 }